@@ -0,0 +1,28 @@
+package com.gateway.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+/**
+ * What one gateway node tells the others about one of its circuit breakers:
+ * either a state transition, or a snapshot of the calls in its window.
+ *
+ * @param state  the new state of a transition, null for a snapshot
+ * @param calls  calls in the breaker's window (snapshots only)
+ * @param failed of those, failed calls
+ * @param slow   of those, slow calls
+ */
+public record BreakerMessage(String nodeId, String breaker, CircuitBreaker.State state,
+                             int calls, int failed, int slow) {
+
+    public static BreakerMessage transition(String nodeId, String breaker, CircuitBreaker.State state) {
+        return new BreakerMessage(nodeId, breaker, state, 0, 0, 0);
+    }
+
+    public static BreakerMessage snapshot(String nodeId, String breaker, int calls, int failed, int slow) {
+        return new BreakerMessage(nodeId, breaker, null, calls, failed, slow);
+    }
+
+    public boolean isTransition() {
+        return state != null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.gateway.circuitbreaker;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Channel over which gateway nodes share circuit breaker state.
+ */
+public interface CircuitBreakerStateBus {
+
+    /**
+     * Send a message to every node, this one included.
+     */
+    Mono<Void> publish(BreakerMessage message);
+
+    /**
+     * Messages from all nodes, this one included.
+     */
+    Flux<BreakerMessage> messages();
+
+    /**
+     * Take the fleet-wide right to probe a breaker's upstream for
+     * {@code ttl}, unless another node holds it. A node already holding it
+     * renews it for another {@code ttl}.
+     *
+     * @return whether this node now holds it
+     */
+    Mono<Boolean> tryLockProbe(String breaker, String nodeId, Duration ttl);
+
+    /**
+     * Give up the right to probe a breaker, if this node still holds it.
+     */
+    Mono<Void> releaseProbe(String breaker, String nodeId);
+}
@@ -0,0 +1,55 @@
+package com.gateway.circuitbreaker;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for {@link RedisCircuitBreakerStateBus}, for running the
+ * shared breaker logic on one node or without Redis.
+ */
+@Component
+@ConditionalOnProperty(prefix = "resilience4j.shared", name = "transport", havingValue = "local")
+public class LocalCircuitBreakerStateBus implements CircuitBreakerStateBus {
+
+    private final Sinks.Many<BreakerMessage> sink = Sinks.many().multicast().directBestEffort();
+
+    // Breaker -> holder and System.nanoTime() the lock expires at
+    private final ConcurrentHashMap<String, ProbeLock> probeLocks = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> publish(BreakerMessage message) {
+        return Mono.fromRunnable(() -> sink.emitNext(message, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(10))));
+    }
+
+    @Override
+    public Flux<BreakerMessage> messages() {
+        return sink.asFlux();
+    }
+
+    @Override
+    public Mono<Boolean> tryLockProbe(String breaker, String nodeId, Duration ttl) {
+        return Mono.fromSupplier(() -> {
+            long now = System.nanoTime();
+            ProbeLock lock = probeLocks.compute(breaker, (name, current) ->
+                    current == null || now - current.expiresAt() >= 0 || current.nodeId().equals(nodeId)
+                            ? new ProbeLock(nodeId, now + ttl.toNanos())
+                            : current);
+            return lock.nodeId().equals(nodeId);
+        });
+    }
+
+    @Override
+    public Mono<Void> releaseProbe(String breaker, String nodeId) {
+        return Mono.fromRunnable(() -> probeLocks.computeIfPresent(breaker, (name, lock) ->
+                lock.nodeId().equals(nodeId) ? null : lock));
+    }
+
+    private record ProbeLock(String nodeId, long expiresAt) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.gateway.circuitbreaker;
+
+import com.gateway.config.ResilienceProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Shares circuit breaker state through Redis: messages go over one pub/sub
+ * channel, and the probe lock is a key holding its node's id with an expiry,
+ * so it lapses by itself if its holder dies. Taking, renewing and releasing
+ * the lock are scripts that check the holder, so a node never extends or
+ * deletes a lock another node has taken since.
+ *
+ * Messages are sent as {@code T|node|state|breaker} for transitions and
+ * {@code S|node|calls|failed|slow|breaker} for snapshots; the breaker name is
+ * last so it may contain any character.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "resilience4j.shared", name = "transport", havingValue = "redis")
+public class RedisCircuitBreakerStateBus implements CircuitBreakerStateBus {
+
+    private static final RedisScript<Long> LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/probe_lock.lua"), Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/probe_release.lua"), Long.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final String channel;
+    private final Flux<BreakerMessage> messages;
+
+    public RedisCircuitBreakerStateBus(ReactiveRedisTemplate<String, String> redisTemplate,
+                                       ResilienceProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.channel = properties.getShared().getChannel();
+        // Cold until subscribed, so resubscribing after an error listens anew
+        this.messages = redisTemplate.listenToChannel(channel)
+                .mapNotNull(message -> decode(message.getMessage()))
+                .share();
+    }
+
+    @Override
+    public Mono<Void> publish(BreakerMessage message) {
+        return redisTemplate.convertAndSend(channel, encode(message)).then();
+    }
+
+    @Override
+    public Flux<BreakerMessage> messages() {
+        return messages;
+    }
+
+    @Override
+    public Mono<Boolean> tryLockProbe(String breaker, String nodeId, Duration ttl) {
+        return redisTemplate.execute(LOCK_SCRIPT, List.of(probeKey(breaker)),
+                        List.of(nodeId, String.valueOf(ttl.toMillis())))
+                .next()
+                .map(held -> held == 1)
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Void> releaseProbe(String breaker, String nodeId) {
+        return redisTemplate.execute(RELEASE_SCRIPT, List.of(probeKey(breaker)), List.of(nodeId)).then();
+    }
+
+    private String probeKey(String breaker) {
+        return channel + ":probe:" + breaker;
+    }
+
+    private static String encode(BreakerMessage message) {
+        if (message.isTransition()) {
+            return "T|" + message.nodeId() + "|" + message.state() + "|" + message.breaker();
+        }
+        return "S|" + message.nodeId() + "|" + message.calls() + "|" + message.failed() + "|"
+                + message.slow() + "|" + message.breaker();
+    }
+
+    private static BreakerMessage decode(String text) {
+        try {
+            if (text.startsWith("T|")) {
+                String[] parts = text.split("\\|", 4);
+                return BreakerMessage.transition(parts[1], parts[3], CircuitBreaker.State.valueOf(parts[2]));
+            }
+            if (text.startsWith("S|")) {
+                String[] parts = text.split("\\|", 6);
+                return BreakerMessage.snapshot(parts[1], parts[5], Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+            }
+        } catch (RuntimeException e) {
+            log.debug("Malformed circuit breaker message: {}", text, e);
+            return null;
+        }
+        log.debug("Unknown circuit breaker message: {}", text);
+        return null;
+    }
+}
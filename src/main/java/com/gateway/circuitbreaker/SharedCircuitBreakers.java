@@ -0,0 +1,288 @@
+package com.gateway.circuitbreaker;
+
+import com.gateway.config.ResilienceProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.IllegalStateTransitionException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the circuit breakers of all gateway nodes in step through a
+ * {@link CircuitBreakerStateBus}, enabled by {@code resilience4j.shared.transport}.
+ *
+ * <ul>
+ *   <li>A node whose breaker opens or closes tells the others, which adopt
+ *       the same state, so an outage found by one node stops traffic from all
+ *       of them.</li>
+ *   <li>Every node publishes the calls, failures and slow calls in each
+ *       closed breaker's window. A node opens its breaker when the fleet's
+ *       summed rates cross the breaker's thresholds, even if its own share of
+ *       the calls is too small to decide on. Windows are not aligned between
+ *       nodes, so the sum is an estimate.</li>
+ *   <li>Only the node holding a breaker's probe lock lets half-open probe
+ *       calls through; the others keep rejecting until its probes close or
+ *       reopen the breaker everywhere, or the lock lapses. The holder renews
+ *       the lock while it keeps probing, stops probing if its hold runs out
+ *       unrenewed, and releases the lock as soon as the breaker leaves
+ *       half-open.</li>
+ * </ul>
+ * If the bus connection fails, the node resubscribes with backoff and keeps
+ * deciding alone meanwhile.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "resilience4j.shared", name = "transport")
+public class SharedCircuitBreakers {
+
+    // Set while a peer's transition is applied, so it is not published back
+    private static final ThreadLocal<Boolean> ADOPTING = ThreadLocal.withInitial(() -> false);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final CircuitBreakerRegistry registry;
+    private final CircuitBreakerStateBus bus;
+    private final Duration snapshotInterval;
+    private final long snapshotMaxAge;
+    private final Duration probeLockTtl;
+    private final long probeLockTtlNanos;
+
+    private final Set<String> attached = ConcurrentHashMap.newKeySet();
+    // Breaker -> node -> that node's latest snapshot
+    private final ConcurrentHashMap<String, Map<String, PeerSnapshot>> peerSnapshots = new ConcurrentHashMap<>();
+    // Breaker -> this node's claim on probing it, while half-open
+    private final ConcurrentHashMap<String, Probe> probes = new ConcurrentHashMap<>();
+    private Disposable subscription;
+    private Disposable publisher;
+
+    public SharedCircuitBreakers(CircuitBreakerRegistry registry, CircuitBreakerStateBus bus,
+                                 ResilienceProperties properties) {
+        this.registry = registry;
+        this.bus = bus;
+        this.snapshotInterval = properties.getShared().getSnapshotInterval();
+        // A node that missed a few snapshots has left or lost its connection
+        this.snapshotMaxAge = snapshotInterval.toNanos() * 3;
+        this.probeLockTtl = properties.getShared().getProbeLockTtl();
+        this.probeLockTtlNanos = probeLockTtl.toNanos();
+    }
+
+    /**
+     * Whether this node may send a probe call through a half-open breaker.
+     * Asking starts an attempt to take or renew the probe lock if one is due,
+     * so the answer may turn to true on a later call.
+     */
+    public boolean mayProbe(CircuitBreaker breaker) {
+        long now = System.nanoTime();
+        requestProbe(breaker.getName(), now);
+        Probe probe = probes.get(breaker.getName());
+        return probe != null && probe.heldAt(now);
+    }
+
+    @PostConstruct
+    void start() {
+        registry.getEventPublisher().onEntryAdded(event -> attach(event.getAddedEntry()));
+        registry.getAllCircuitBreakers().forEach(this::attach);
+        subscription = bus.messages()
+                .filter(message -> !nodeId.equals(message.nodeId()))
+                .doOnError(e -> log.warn("Lost circuit breaker state bus, resubscribing", e))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::receive);
+        long interval = snapshotInterval.toMillis();
+        publisher = Schedulers.parallel().schedulePeriodically(
+                this::publishSnapshots, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Sharing circuit breaker state as node {}", nodeId);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        if (publisher != null) {
+            publisher.dispose();
+        }
+    }
+
+    private void attach(CircuitBreaker breaker) {
+        if (attached.add(breaker.getName())) {
+            breaker.getEventPublisher().onStateTransition(event ->
+                    onTransition(breaker, event.getStateTransition().getToState()));
+        }
+    }
+
+    private void onTransition(CircuitBreaker breaker, CircuitBreaker.State state) {
+        String name = breaker.getName();
+        // Counts from before the transition no longer describe the window
+        peerSnapshots.remove(name);
+        if (state != CircuitBreaker.State.HALF_OPEN) {
+            Probe probe = probes.remove(name);
+            if (probe != null && probe.heldAt(System.nanoTime())) {
+                releaseProbe(name);
+            }
+        }
+        if (ADOPTING.get()) {
+            return;
+        }
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.CLOSED) {
+            bus.publish(BreakerMessage.transition(nodeId, name, state))
+                    .subscribe(null, e -> log.warn("Failed to publish {} transition to {}", name, state, e));
+        } else if (state == CircuitBreaker.State.HALF_OPEN) {
+            requestProbe(name, System.nanoTime());
+        }
+    }
+
+    private void receive(BreakerMessage message) {
+        registry.find(message.breaker()).ifPresent(breaker -> {
+            if (message.isTransition()) {
+                adopt(breaker, message.state());
+            } else {
+                peerSnapshots.computeIfAbsent(breaker.getName(), name -> new ConcurrentHashMap<>())
+                        .put(message.nodeId(), new PeerSnapshot(message, System.nanoTime()));
+                openOnFleetRates(breaker);
+            }
+        });
+    }
+
+    /**
+     * Apply a peer's open or close. Breakers forced into a state by hand are
+     * left alone.
+     */
+    private void adopt(CircuitBreaker breaker, CircuitBreaker.State state) {
+        CircuitBreaker.State current = breaker.getState();
+        if (current == state || (current != CircuitBreaker.State.CLOSED && current != CircuitBreaker.State.OPEN
+                && current != CircuitBreaker.State.HALF_OPEN)) {
+            return;
+        }
+        ADOPTING.set(true);
+        try {
+            if (state == CircuitBreaker.State.OPEN) {
+                breaker.transitionToOpenState();
+            } else if (state == CircuitBreaker.State.CLOSED) {
+                breaker.transitionToClosedState();
+            }
+            log.info("Circuit breaker {} adopted {} from a peer", breaker.getName(), state);
+        } catch (IllegalStateTransitionException e) {
+            log.debug("Circuit breaker {} could not adopt {}", breaker.getName(), state, e);
+        } finally {
+            ADOPTING.set(false);
+        }
+    }
+
+    private void openOnFleetRates(CircuitBreaker breaker) {
+        if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+        CircuitBreaker.Metrics metrics = breaker.getMetrics();
+        long calls = metrics.getNumberOfBufferedCalls();
+        long failed = metrics.getNumberOfFailedCalls();
+        long slow = metrics.getNumberOfSlowCalls();
+        long now = System.nanoTime();
+        Map<String, PeerSnapshot> snapshots = peerSnapshots.getOrDefault(breaker.getName(), Map.of());
+        for (Map.Entry<String, PeerSnapshot> entry : snapshots.entrySet()) {
+            PeerSnapshot snapshot = entry.getValue();
+            if (now - snapshot.receivedAt() > snapshotMaxAge) {
+                snapshots.remove(entry.getKey(), snapshot);
+                continue;
+            }
+            calls += snapshot.message().calls();
+            failed += snapshot.message().failed();
+            slow += snapshot.message().slow();
+        }
+
+        CircuitBreakerConfig config = breaker.getCircuitBreakerConfig();
+        if (calls < config.getMinimumNumberOfCalls()) {
+            return;
+        }
+        float failureRate = failed * 100f / calls;
+        float slowRate = slow * 100f / calls;
+        if (failureRate >= config.getFailureRateThreshold() || slowRate >= config.getSlowCallRateThreshold()) {
+            log.warn("Opening circuit breaker {} on fleet rates: {}% failed, {}% slow of {} calls",
+                    breaker.getName(), failureRate, slowRate, calls);
+            try {
+                breaker.transitionToOpenState();
+            } catch (IllegalStateTransitionException e) {
+                log.debug("Circuit breaker {} changed state meanwhile", breaker.getName(), e);
+            }
+        }
+    }
+
+    private void publishSnapshots() {
+        for (CircuitBreaker breaker : registry.getAllCircuitBreakers()) {
+            CircuitBreaker.Metrics metrics = breaker.getMetrics();
+            if (breaker.getState() != CircuitBreaker.State.CLOSED || metrics.getNumberOfBufferedCalls() == 0) {
+                continue;
+            }
+            bus.publish(BreakerMessage.snapshot(nodeId, breaker.getName(), metrics.getNumberOfBufferedCalls(),
+                            metrics.getNumberOfFailedCalls(), metrics.getNumberOfSlowCalls()))
+                    .subscribe(null, e -> log.debug("Failed to publish snapshot of {}", breaker.getName(), e));
+        }
+    }
+
+    /**
+     * Try to take the probe lock, or renew it once half its hold has run,
+     * unless an attempt was made within the last half lock period.
+     */
+    private void requestProbe(String name, long now) {
+        Probe current = probes.get(name);
+        if (current != null && now - current.retryAt() < 0) {
+            return;
+        }
+        long retryAt = now + probeLockTtlNanos / 2;
+        boolean renewing = current != null && current.heldAt(now);
+        Probe attempt = new Probe(renewing ? current.expiresAt() : now, retryAt);
+        boolean claimed = current == null
+                ? probes.putIfAbsent(name, attempt) == null
+                : probes.replace(name, current, attempt);
+        if (!claimed) {
+            return;
+        }
+        // The hold is counted from before the request, so it ends no later than the lock
+        bus.tryLockProbe(name, nodeId, probeLockTtl).subscribe(
+                held -> {
+                    Probe result = new Probe(held ? now + probeLockTtlNanos : now, retryAt);
+                    if (probes.replace(name, attempt, result)) {
+                        if (held && !renewing) {
+                            log.info("Node {} probes circuit breaker {}", nodeId, name);
+                        }
+                    } else if (held && !probes.containsKey(name)) {
+                        // The breaker left half-open while the lock was being taken
+                        releaseProbe(name);
+                    }
+                },
+                e -> log.warn("Failed to take probe lock for {}", name, e));
+    }
+
+    private void releaseProbe(String name) {
+        bus.releaseProbe(name, nodeId)
+                .subscribe(null, e -> log.debug("Failed to release probe lock for {}", name, e));
+    }
+
+    private record PeerSnapshot(BreakerMessage message, long receivedAt) {
+    }
+
+    /**
+     * @param expiresAt System.nanoTime() at which this node's hold on the
+     *                  probe lock runs out; not after now if it holds none
+     * @param retryAt   System.nanoTime() after which to try for, or renew,
+     *                  the lock again
+     */
+    private record Probe(long expiresAt, long retryAt) {
+
+        boolean heldAt(long now) {
+            return now - expiresAt < 0;
+        }
+    }
+}
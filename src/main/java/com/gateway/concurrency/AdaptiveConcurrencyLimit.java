@@ -0,0 +1,141 @@
+package com.gateway.concurrency;
+
+import com.gateway.config.ConcurrencyLimitProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limit on requests in flight to one upstream that follows the upstream's
+ * latency, using a gradient algorithm.
+ *
+ * Response times are averaged per window and compared with a long-term
+ * average. While recent latency stays within {@code rtt-tolerance} of the
+ * long-term one the limit grows in steps proportional to its square root;
+ * once the upstream starts queueing and latency rises further, the limit
+ * shrinks in proportion. Each new estimate is blended into the limit by
+ * {@code smoothing}. The long-term average slowly follows,
+ * so a lasting change in the upstream's normal latency becomes the new
+ * baseline. The limit only grows while requests actually use at least half
+ * of it.
+ *
+ * Admission is a compare-and-set on the in-flight count, so rejecting a
+ * request never locks. Only the thread that closes a window recalculates the
+ * limit.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minWindowSamples;
+    private final int longWindows;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Current window
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    // Only touched by the thread closing a window
+    private double estimatedLimit;
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimit(ConcurrencyLimitProperties properties) {
+        this.minLimit = properties.getMinLimit();
+        this.maxLimit = properties.getMaxLimit();
+        this.rttTolerance = properties.getRttTolerance();
+        this.smoothing = properties.getSmoothing();
+        this.windowNanos = properties.getWindow().toNanos();
+        this.minWindowSamples = properties.getMinWindowSamples();
+        this.longWindows = properties.getLongWindows();
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, properties.getInitialLimit()));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Take a slot for a request if fewer than the limit are in flight.
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        if (current + 1 > peakInFlight.get()) {
+            peakInFlight.accumulateAndGet(current + 1, Math::max);
+        }
+        return true;
+    }
+
+    /**
+     * Free a slot after a response that took {@code rttNanos}.
+     */
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        rttSum.add(rttNanos);
+        samples.increment();
+
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && samples.sum() >= minWindowSamples
+                && windowStart.compareAndSet(start, now)) {
+            closeWindow();
+        }
+    }
+
+    /**
+     * Free a slot without a latency sample, e.g. when the upstream never
+     * responded.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void closeWindow() {
+        long count = samples.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        int peak = peakInFlight.getAndSet(inFlight.get());
+        if (count == 0) {
+            return;
+        }
+        double shortRtt = Math.max(1, (double) sum / count);
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / longWindows;
+            // Recover quickly once a slow spell that inflated the baseline ends
+            if (longRtt / shortRtt > 2) {
+                longRtt *= 0.95;
+            }
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+        double candidate = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        if (candidate > estimatedLimit && peak < estimatedLimit / 2) {
+            // Not enough traffic to tell whether a higher limit would hold
+            return;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - smoothing) + candidate * smoothing));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,56 @@
+package com.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Adaptive per-route concurrency limits bound from the
+ * {@code concurrency-limit} section of application.yml.
+ */
+@Data
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /**
+     * Whether requests in flight to each route are limited.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Requests in flight allowed per route before any latency is measured.
+     */
+    private int initialLimit = 20;
+
+    private int minLimit = 5;
+
+    private int maxLimit = 500;
+
+    /**
+     * How far recent latency may rise above the long-term latency, as a
+     * ratio, before the limit shrinks.
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * Share of each new limit estimate taken into the limit, 0 to 1.
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * Shortest window latency is averaged over.
+     */
+    private Duration window = Duration.ofMillis(100);
+
+    /**
+     * Fewest responses a window averages over; windows last longer if
+     * needed.
+     */
+    private int minWindowSamples = 10;
+
+    /**
+     * Windows the long-term latency average spans.
+     */
+    private int longWindows = 600;
+}
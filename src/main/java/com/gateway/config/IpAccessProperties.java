@@ -0,0 +1,43 @@
+package com.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client address allow and deny lists bound from the {@code ip-access}
+ * section of application.yml.
+ */
+@Data
+@ConfigurationProperties(prefix = "ip-access")
+public class IpAccessProperties {
+
+    /**
+     * CIDR blocks whose requests skip rate limiting.
+     */
+    private List<String> allow = new ArrayList<>();
+
+    /**
+     * CIDR blocks whose requests are rejected with 403. Deny wins over allow.
+     */
+    private List<String> deny = new ArrayList<>();
+
+    /**
+     * Optional file of further allowed blocks, one per line ({@code #} starts
+     * a comment), reloaded when it changes.
+     */
+    private String allowFile;
+
+    /**
+     * Optional file of further denied blocks, in the same format.
+     */
+    private String denyFile;
+
+    /**
+     * How often the files are checked for changes.
+     */
+    private Duration filePollInterval = Duration.ofSeconds(10);
+}
@@ -0,0 +1,270 @@
+package com.gateway.config;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rate limiting settings bound from the {@code rate-limit} section of
+ * application.yml.
+ */
+@Data
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * Limiting strategy and where its state is kept: redis, memory, leasing,
+     * sliding-window, gcra or memory-gcra.
+     */
+    private String backend = "redis";
+
+    /**
+     * Limits for routes without their own entry, and the values any missing
+     * policy field falls back to.
+     */
+    private Policy defaultPolicy = Policy.of(100, 10, Duration.ofMinutes(5));
+
+    /**
+     * Limits per gateway route id.
+     */
+    private Map<String, RoutePolicy> routes = new HashMap<>();
+
+    /**
+     * Limits per client tier, used on routes that do not override that tier.
+     */
+    private Map<String, Policy> tiers = new HashMap<>();
+
+    /**
+     * Tier of each client, keyed by rate limit key (e.g. a client IP, or
+     * {@code jwt:<sub>} on jwt-sub routes).
+     */
+    private Map<String, String> clientTiers = new HashMap<>();
+
+    /**
+     * What requests are limited by on routes without their own key: ip,
+     * api-key, jwt-sub, route or {@code header:<name>}. Several names
+     * combine into one key.
+     */
+    private List<String> key = new ArrayList<>(List.of("ip"));
+
+    /**
+     * Gateway-wide ceiling shared by every route and client, checked together
+     * with the per-client limits. None if unset.
+     */
+    private Policy global;
+
+    /**
+     * Request header carrying the client's API key.
+     */
+    private String apiKeyHeader = "X-API-Key";
+
+    /**
+     * Limits per API key across all routes, checked together with the
+     * per-client limits for requests carrying a key. None if unset.
+     */
+    private Policy apiKeyPolicy;
+
+    /**
+     * API keys issued to clients. Only these get an API key bucket; requests
+     * with any other key are limited as if they sent none.
+     */
+    private Set<String> apiKeys = new HashSet<>();
+
+    /**
+     * Optional YAML file with a {@code rate-limit} section whose policies
+     * replace these at runtime whenever the file changes.
+     */
+    private String policyFile;
+
+    /**
+     * How often the policy file is checked for changes.
+     */
+    private Duration policyFilePollInterval = Duration.ofSeconds(5);
+
+    /**
+     * Redis channel over which policies sent to the admin endpoint reach
+     * every gateway node. Only the receiving node reloads if unset.
+     */
+    private String policyChannel;
+
+    /**
+     * Token the admin endpoint requires in the {@code X-Admin-Token} header.
+     * The endpoint is disabled if unset.
+     */
+    private String adminToken;
+
+    /**
+     * CIDR blocks (or single addresses) of proxies in front of the gateway.
+     * X-Forwarded-For entries are only trusted as far as they were added by
+     * these; if empty, the connection's remote address is the client.
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    private Jwt jwt = new Jwt();
+
+    private Leasing leasing = new Leasing();
+
+    private Batching batching = new Batching();
+
+    @Data
+    public static class Policy {
+
+        /**
+         * Maximum tokens (burst size).
+         */
+        private Long capacity;
+
+        /**
+         * Tokens added per second.
+         */
+        private Long refillRate;
+
+        /**
+         * How long an idle bucket is kept.
+         */
+        private Duration ttl;
+
+        /**
+         * Shaping: how long a request that finds no tokens is held and
+         * retried before it is rejected. Zero rejects at once.
+         */
+        private Duration maxDelay;
+
+        /**
+         * Shaping: most requests held per bucket on one node; further
+         * requests are rejected at once.
+         */
+        private Integer maxQueued;
+
+        static Policy of(long capacity, long refillRate, Duration ttl) {
+            Policy policy = new Policy();
+            policy.setCapacity(capacity);
+            policy.setRefillRate(refillRate);
+            policy.setTtl(ttl);
+            policy.setMaxDelay(Duration.ZERO);
+            policy.setMaxQueued(100);
+            return policy;
+        }
+    }
+
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class RoutePolicy extends Policy {
+
+        /**
+         * What requests on this route are limited by, as for the global
+         * {@code key}. Inherited if unset.
+         */
+        private List<String> key;
+
+        /**
+         * Per-tier limits on this route, overriding the global tier limits.
+         */
+        private Map<String, Policy> tiers = new HashMap<>();
+
+        /**
+         * Ceiling for all clients of this route together, checked with the
+         * per-client limits. None if unset.
+         */
+        private Policy ceiling;
+
+        /**
+         * Token cost of requests on this route; the first matching rule
+         * applies and requests matching none cost one token.
+         */
+        private List<CostRule> costs = new ArrayList<>();
+    }
+
+    @Data
+    public static class CostRule {
+
+        /**
+         * HTTP method to match, or any method if unset.
+         */
+        private String method;
+
+        /**
+         * Path pattern to match (e.g. /api/payments/export/**), or any path
+         * if unset.
+         */
+        private String path;
+
+        /**
+         * Tokens a matching request costs, at least 1.
+         */
+        private long cost = 1;
+
+        /**
+         * If set, one extra token per started unit of request Content-Length.
+         */
+        private DataSize perContentLength;
+    }
+
+    @Data
+    public static class Jwt {
+
+        /**
+         * Shared secret for HS256-signed bearer tokens, at least 32 bytes.
+         */
+        private String secret;
+
+        /**
+         * PEM RSA public key for RS256-signed bearer tokens.
+         */
+        private String publicKey;
+
+        /**
+         * Required {@code iss} claim, or any issuer if unset.
+         */
+        private String issuer;
+
+        /**
+         * Leeway for {@code exp} and {@code nbf} against the gateway clock.
+         */
+        private Duration clockSkew = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Leasing {
+
+        /**
+         * How long a node may spend leased tokens before handing back the rest.
+         */
+        private Duration duration = Duration.ofSeconds(1);
+
+        /**
+         * Upper bound on tokens leased per key per node. Each node can admit
+         * at most this many requests beyond the shared bucket per key.
+         */
+        private long maxTokens = 20;
+    }
+
+    @Data
+    public static class Batching {
+
+        /**
+         * Gather concurrent Redis token bucket calls into multi-bucket script
+         * calls. Needs a non-clustered Redis.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Longest a call waits for others to join its batch.
+         */
+        private Duration window = Duration.ofNanos(500_000);
+
+        /**
+         * Calls per batch; a full batch is sent without waiting.
+         */
+        private int maxSize = 64;
+    }
+}
@@ -2,29 +2,156 @@ package com.gateway.config;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * Circuit breaker and time limiter registries built from
+ * {@link ResilienceProperties}.
+ *
+ * The {@code default} config becomes each registry's default. Route instances
+ * are created up front with their own settings, so the route's breaker or
+ * time limiter already exists, configured, when it is first looked up by id.
+ */
 @Configuration
 public class Resilience4jConfig {
 
+    public static final String DEFAULT_CONFIG = "default";
+
+    // Used for any field the configuration leaves out
+    private static final CircuitBreakerConfig BREAKER_DEFAULTS = CircuitBreakerConfig.custom()
+            // Open circuit after 50% failure rate
+            .failureRateThreshold(50)
+            // Minimum number of calls before calculating failure rate
+            .minimumNumberOfCalls(5)
+            // Wait 30 seconds before trying again (half-open state)
+            .waitDurationInOpenState(Duration.ofSeconds(30))
+            // Allow 3 calls in half-open state to test recovery
+            .permittedNumberOfCallsInHalfOpenState(3)
+            // Size of sliding window for calculating failure rate
+            .slidingWindowSize(10)
+            // Calls slower than this count as slow
+            .slowCallDurationThreshold(Duration.ofSeconds(2))
+            // Open circuit when half the calls are slow
+            .slowCallRateThreshold(50)
+            .build();
+
     @Bean
-    public CircuitBreakerRegistry circuitBreakerRegistry() {
-        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
-                // Open circuit after 50% failure rate
-                .failureRateThreshold(50)
-                // Minimum number of calls before calculating failure rate
-                .minimumNumberOfCalls(5)
-                // Wait 30 seconds before trying again (half-open state)
-                .waitDurationInOpenState(Duration.ofSeconds(30))
-                // Allow 3 calls in half-open state to test recovery
-                .permittedNumberOfCallsInHalfOpenState(3)
-                // Size of sliding window for calculating failure rate
-                .slidingWindowSize(10)
-                .build();
-
-        return CircuitBreakerRegistry.of(config);
+    public CircuitBreakerRegistry circuitBreakerRegistry(ResilienceProperties properties) {
+        ResilienceProperties.Section<ResilienceProperties.Breaker> section = properties.getCircuitbreaker();
+        Map<String, CircuitBreakerConfig> configs = compile(section.getConfigs(), BREAKER_DEFAULTS,
+                ResilienceProperties.Breaker::getBaseConfig, Resilience4jConfig::toBreakerConfig);
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(configs);
+        section.getInstances().forEach((routeId, settings) ->
+                registry.circuitBreaker(routeId, toBreakerConfig(settings,
+                        base(configs, settings.getBaseConfig(), routeId))));
+        return registry;
+    }
+
+    @Bean
+    public TimeLimiterRegistry timeLimiterRegistry(ResilienceProperties properties) {
+        ResilienceProperties.Section<ResilienceProperties.TimeLimiter> section = properties.getTimelimiter();
+        Map<String, TimeLimiterConfig> configs = compile(section.getConfigs(), TimeLimiterConfig.ofDefaults(),
+                ResilienceProperties.TimeLimiter::getBaseConfig, Resilience4jConfig::toTimeLimiterConfig);
+
+        TimeLimiterRegistry registry = TimeLimiterRegistry.of(configs);
+        section.getInstances().forEach((routeId, settings) ->
+                registry.timeLimiter(routeId, toTimeLimiterConfig(settings,
+                        base(configs, settings.getBaseConfig(), routeId))));
+        return registry;
+    }
+
+    /**
+     * Build every named config on top of its base config, the defaults
+     * under all of them.
+     */
+    private static <S, C> Map<String, C> compile(Map<String, S> settings, C defaults,
+                                                 Function<S, String> baseName,
+                                                 BiFunction<S, C, C> build) {
+        Map<String, C> configs = new HashMap<>();
+        S defaultSettings = settings.get(DEFAULT_CONFIG);
+        configs.put(DEFAULT_CONFIG, defaultSettings != null ? build.apply(defaultSettings, defaults) : defaults);
+        for (String name : settings.keySet()) {
+            compile(name, settings, baseName, build, configs, new HashSet<>());
+        }
+        return configs;
+    }
+
+    private static <S, C> C compile(String name, Map<String, S> settings, Function<S, String> baseName,
+                                    BiFunction<S, C, C> build, Map<String, C> configs, Set<String> visiting) {
+        C compiled = configs.get(name);
+        if (compiled != null) {
+            return compiled;
+        }
+        S config = settings.get(name);
+        if (config == null) {
+            throw new IllegalArgumentException("Unknown resilience4j base config: " + name);
+        }
+        if (!visiting.add(name)) {
+            throw new IllegalArgumentException("Resilience4j base configs form a cycle at: " + name);
+        }
+        String base = baseName.apply(config);
+        compiled = build.apply(config, compile(base != null ? base : DEFAULT_CONFIG, settings, baseName, build,
+                configs, visiting));
+        configs.put(name, compiled);
+        return compiled;
+    }
+
+    private static <C> C base(Map<String, C> configs, String baseName, String instance) {
+        C base = configs.get(baseName != null ? baseName : DEFAULT_CONFIG);
+        if (base == null) {
+            throw new IllegalArgumentException("Unknown resilience4j base config " + baseName + " for " + instance);
+        }
+        return base;
+    }
+
+    private static CircuitBreakerConfig toBreakerConfig(ResilienceProperties.Breaker settings,
+                                                        CircuitBreakerConfig base) {
+        CircuitBreakerConfig.Builder builder = CircuitBreakerConfig.from(base);
+        if (settings.getFailureRateThreshold() != null) {
+            builder.failureRateThreshold(settings.getFailureRateThreshold());
+        }
+        if (settings.getMinimumNumberOfCalls() != null) {
+            builder.minimumNumberOfCalls(settings.getMinimumNumberOfCalls());
+        }
+        if (settings.getWaitDurationInOpenState() != null) {
+            builder.waitDurationInOpenState(settings.getWaitDurationInOpenState());
+        }
+        if (settings.getPermittedNumberOfCallsInHalfOpenState() != null) {
+            builder.permittedNumberOfCallsInHalfOpenState(settings.getPermittedNumberOfCallsInHalfOpenState());
+        }
+        if (settings.getSlidingWindowSize() != null) {
+            builder.slidingWindowSize(settings.getSlidingWindowSize());
+        }
+        if (settings.getSlidingWindowType() != null) {
+            builder.slidingWindowType(settings.getSlidingWindowType());
+        }
+        if (settings.getSlowCallDurationThreshold() != null) {
+            builder.slowCallDurationThreshold(settings.getSlowCallDurationThreshold());
+        }
+        if (settings.getSlowCallRateThreshold() != null) {
+            builder.slowCallRateThreshold(settings.getSlowCallRateThreshold());
+        }
+        return builder.build();
+    }
+
+    private static TimeLimiterConfig toTimeLimiterConfig(ResilienceProperties.TimeLimiter settings,
+                                                         TimeLimiterConfig base) {
+        TimeLimiterConfig.Builder builder = TimeLimiterConfig.from(base);
+        if (settings.getTimeoutDuration() != null) {
+            builder.timeoutDuration(settings.getTimeoutDuration());
+        }
+        return builder.build();
     }
 }
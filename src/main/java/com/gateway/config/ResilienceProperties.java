@@ -0,0 +1,135 @@
+package com.gateway.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig.SlidingWindowType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker and upstream timeout settings bound from the
+ * {@code resilience4j} section of application.yml.
+ *
+ * Named {@code configs} hold shared settings; {@code instances} are keyed by
+ * gateway route id and apply to that route's breaker or timeout. The config
+ * named {@code default} applies to every route without an instance.
+ */
+@Data
+@ConfigurationProperties(prefix = "resilience4j")
+public class ResilienceProperties {
+
+    private Section<Breaker> circuitbreaker = new Section<>();
+
+    private Section<TimeLimiter> timelimiter = new Section<>();
+
+    private Shared shared = new Shared();
+
+    @Data
+    public static class Section<T> {
+
+        /**
+         * Shared settings by name.
+         */
+        private Map<String, T> configs = new HashMap<>();
+
+        /**
+         * Settings per route id.
+         */
+        private Map<String, T> instances = new HashMap<>();
+    }
+
+    @Data
+    public static class Breaker {
+
+        /**
+         * Config whose values fill in fields left out here; {@code default}
+         * if unset.
+         */
+        private String baseConfig;
+
+        /**
+         * Failure rate, in percent, at which the circuit opens.
+         */
+        private Float failureRateThreshold;
+
+        /**
+         * Calls needed in the window before rates are calculated.
+         */
+        private Integer minimumNumberOfCalls;
+
+        /**
+         * How long the circuit stays open before letting probe calls through.
+         */
+        private Duration waitDurationInOpenState;
+
+        /**
+         * Probe calls let through while half-open.
+         */
+        private Integer permittedNumberOfCallsInHalfOpenState;
+
+        /**
+         * Window size, in calls or seconds depending on the window type.
+         */
+        private Integer slidingWindowSize;
+
+        /**
+         * COUNT_BASED or TIME_BASED.
+         */
+        private SlidingWindowType slidingWindowType;
+
+        /**
+         * Calls slower than this count as slow.
+         */
+        private Duration slowCallDurationThreshold;
+
+        /**
+         * Slow call rate, in percent, at which the circuit opens.
+         */
+        private Float slowCallRateThreshold;
+    }
+
+    @Data
+    public static class TimeLimiter {
+
+        /**
+         * Config whose values fill in fields left out here; {@code default}
+         * if unset.
+         */
+        private String baseConfig;
+
+        /**
+         * How long to wait for the upstream response to start before
+         * cancelling the call and answering 504.
+         */
+        private Duration timeoutDuration;
+    }
+
+    @Data
+    public static class Shared {
+
+        /**
+         * How breaker state is shared between gateway nodes: redis, or local
+         * for a single process. Each node decides alone if unset.
+         */
+        private String transport;
+
+        /**
+         * Redis pub/sub channel, also the prefix of the probe lock keys.
+         */
+        private String channel = "gateway:circuit-breakers";
+
+        /**
+         * How often each node publishes its breakers' call counts.
+         */
+        private Duration snapshotInterval = Duration.ofSeconds(1);
+
+        /**
+         * How long one node holds the right to probe a half-open upstream
+         * before another node may take over; the holder renews it every half
+         * period while it keeps probing.
+         */
+        private Duration probeLockTtl = Duration.ofSeconds(10);
+    }
+}
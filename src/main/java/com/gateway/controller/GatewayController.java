@@ -1,15 +1,25 @@
 package com.gateway.controller;
 
+import com.gateway.config.RateLimitProperties;
+import com.gateway.ratelimit.RateLimitPolicy;
+import com.gateway.ratelimit.RateLimitPolicyRegistry;
 import com.gateway.ratelimit.TokenBucketRateLimiter;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,8 +28,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class GatewayController {
 
+    private static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
     private final TokenBucketRateLimiter rateLimiter;
+    private final RateLimitPolicyRegistry policyRegistry;
     private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final RateLimitProperties properties;
 
     @GetMapping("/health")
     public Mono<Map<String, String>> health() {
@@ -30,18 +44,52 @@ public class GatewayController {
     }
 
     @GetMapping("/rate-limit/status")
-    public Mono<Map<String, Object>> getRateLimitStatus(@RequestParam String key) {
-        return rateLimiter.getRemainingTokens(key)
+    public Mono<Map<String, Object>> getRateLimitStatus(@RequestParam String key,
+                                                        @RequestParam(defaultValue = "default") String route) {
+        RateLimitPolicy policy = policyRegistry.resolve(route, key);
+        return rateLimiter.getRemainingTokens(TokenBucketRateLimiter.bucketKey(route, key), policy)
                 .map(tokens -> {
                     Map<String, Object> status = new HashMap<>();
                     status.put("key", key);
+                    status.put("route", route);
                     status.put("remainingTokens", tokens);
-                    status.put("capacity", 100);
-                    status.put("refillRate", "10 tokens/second");
+                    status.put("capacity", policy.capacity());
+                    status.put("refillRate", policy.refillRate() + " tokens/second");
                     return status;
                 });
     }
 
+    /**
+     * Replace the rate limit policies without a restart. The body is a YAML
+     * (or JSON) document with a rate-limit section, as in the policy file.
+     * Requires the configured admin token; disabled without one.
+     */
+    @PutMapping("/rate-limit/policies")
+    public Mono<Map<String, Object>> reloadRateLimitPolicies(
+            @RequestHeader(name = ADMIN_TOKEN_HEADER, required = false) String token,
+            @RequestBody String policies) {
+        String adminToken = properties.getAdminToken();
+        if (adminToken == null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                adminToken.getBytes(StandardCharsets.UTF_8))) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN));
+        }
+
+        Mono<Boolean> reload;
+        try {
+            reload = policyRegistry.reload(policies);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        return reload.map(published -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", published ? "PUBLISHED" : "RELOADED");
+            return result;
+        });
+    }
+
     @GetMapping("/circuit-breaker/status")
     public Mono<Map<String, Object>> getCircuitBreakerStatus(@RequestParam String service) {
         CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(service);
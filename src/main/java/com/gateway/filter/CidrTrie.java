@@ -0,0 +1,215 @@
+package com.gateway.filter;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of IPv4 and IPv6 CIDR blocks answering whether an address
+ * falls in any of them.
+ *
+ * Blocks are kept in a path-compressed binary trie laid out in primitive
+ * arrays: only branching nodes and block ends are stored, each holding its
+ * full prefix, so a lookup compares at most one prefix per stored node and
+ * follows one address bit between them. Lookups take at most 128 steps and
+ * allocate nothing. IPv4 blocks are stored IPv4-mapped, so they match
+ * addresses written either way.
+ */
+public final class CidrTrie {
+
+    private static final CidrTrie EMPTY = new CidrTrie(new long[0], new long[0], new int[0],
+            new int[0], new int[0], new boolean[0]);
+
+    // Node i covers prefixLength[i] bits of (prefixHi[i], prefixLo[i]); child
+    // indexes are -1 when absent. Node 0 is the root.
+    private final long[] prefixHi;
+    private final long[] prefixLo;
+    private final int[] prefixLength;
+    private final int[] zero;
+    private final int[] one;
+    private final boolean[] terminal;
+
+    private CidrTrie(long[] prefixHi, long[] prefixLo, int[] prefixLength,
+                     int[] zero, int[] one, boolean[] terminal) {
+        this.prefixHi = prefixHi;
+        this.prefixLo = prefixLo;
+        this.prefixLength = prefixLength;
+        this.zero = zero;
+        this.one = one;
+        this.terminal = terminal;
+    }
+
+    /**
+     * Build from blocks such as {@code 10.0.0.0/8} or {@code fd00::/8}; a
+     * bare address is a single-address block.
+     *
+     * @throws IllegalArgumentException if a block is not valid CIDR notation
+     */
+    public static CidrTrie of(Collection<String> blocks) {
+        if (blocks.isEmpty()) {
+            return EMPTY;
+        }
+        Builder root = new Builder(0, 0, 0);
+        long[] address = new long[2];
+        for (String block : blocks) {
+            int slash = block.indexOf('/');
+            String host = slash < 0 ? block : block.substring(0, slash);
+            if (!IpAddress.parse(host, 0, host.length(), address)) {
+                throw new IllegalArgumentException("Invalid CIDR block: " + block);
+            }
+            int maxLength = IpAddress.isV4(address[0], address[1]) && host.indexOf(':') < 0 ? 32 : 128;
+            int length = maxLength;
+            if (slash >= 0) {
+                try {
+                    length = Integer.parseInt(block.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid CIDR block: " + block, e);
+                }
+                if (length < 0 || length > maxLength) {
+                    throw new IllegalArgumentException("Invalid CIDR prefix length: " + block);
+                }
+            }
+            root.insert(address[0], address[1], length + (128 - maxLength));
+        }
+        return root.compile();
+    }
+
+    public boolean isEmpty() {
+        return prefixLength.length == 0;
+    }
+
+    /**
+     * Whether the address, as parsed by {@link IpAddress#parse}, lies in any
+     * block.
+     */
+    public boolean contains(long hi, long lo) {
+        int node = prefixLength.length == 0 ? -1 : 0;
+        while (node >= 0) {
+            int length = prefixLength[node];
+            if (!matches(hi, lo, prefixHi[node], prefixLo[node], length)) {
+                return false;
+            }
+            if (terminal[node]) {
+                return true;
+            }
+            if (length == 128) {
+                return false;
+            }
+            node = bit(hi, lo, length) == 0 ? zero[node] : one[node];
+        }
+        return false;
+    }
+
+    private static boolean matches(long hi, long lo, long prefixHi, long prefixLo, int length) {
+        if (length == 0) {
+            return true;
+        }
+        if (length <= 64) {
+            return ((hi ^ prefixHi) & (-1L << (64 - length))) == 0;
+        }
+        return hi == prefixHi && ((lo ^ prefixLo) & (-1L << (128 - length))) == 0;
+    }
+
+    private static int bit(long hi, long lo, int index) {
+        return (int) (index < 64 ? hi >>> (63 - index) : lo >>> (127 - index)) & 1;
+    }
+
+    /**
+     * Uncompressed trie used only while building.
+     */
+    private static final class Builder {
+        final long hi;
+        final long lo;
+        final int length;
+        Builder zero;
+        Builder one;
+        boolean terminal;
+
+        Builder(long hi, long lo, int length) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+        }
+
+        void insert(long addressHi, long addressLo, int blockLength) {
+            Builder node = this;
+            while (node.length < blockLength && !node.terminal) {
+                int next = node.length;
+                boolean set = bit(addressHi, addressLo, next) == 1;
+                Builder child = set ? node.one : node.zero;
+                if (child == null) {
+                    long childHi = node.hi;
+                    long childLo = node.lo;
+                    if (set) {
+                        if (next < 64) {
+                            childHi |= 1L << (63 - next);
+                        } else {
+                            childLo |= 1L << (127 - next);
+                        }
+                    }
+                    child = new Builder(childHi, childLo, next + 1);
+                    if (set) {
+                        node.one = child;
+                    } else {
+                        node.zero = child;
+                    }
+                }
+                node = child;
+            }
+            // A block inside a shorter one adds nothing
+            if (!node.terminal) {
+                node.terminal = true;
+                node.zero = null;
+                node.one = null;
+            }
+        }
+
+        CidrTrie compile() {
+            int count = count(this);
+            long[] prefixHi = new long[count];
+            long[] prefixLo = new long[count];
+            int[] prefixLength = new int[count];
+            int[] zero = new int[count];
+            int[] one = new int[count];
+            boolean[] terminal = new boolean[count];
+            int[] next = {0};
+            emit(skip(this), prefixHi, prefixLo, prefixLength, zero, one, terminal, next);
+            return new CidrTrie(prefixHi, prefixLo, prefixLength, zero, one, terminal);
+        }
+
+        /**
+         * Nodes kept after compression: block ends and branch points.
+         */
+        private static int count(Builder node) {
+            if (node == null) {
+                return 0;
+            }
+            int below = count(node.zero) + count(node.one);
+            boolean kept = node.terminal || (node.zero != null && node.one != null);
+            return below + (kept ? 1 : 0);
+        }
+
+        /**
+         * First node at or below {@code node} that compression keeps.
+         */
+        private static Builder skip(Builder node) {
+            while (node != null && !node.terminal && (node.zero == null) != (node.one == null)) {
+                node = node.zero != null ? node.zero : node.one;
+            }
+            return node;
+        }
+
+        private static int emit(Builder node, long[] prefixHi, long[] prefixLo, int[] prefixLength,
+                                int[] zero, int[] one, boolean[] terminal, int[] next) {
+            if (node == null) {
+                return -1;
+            }
+            int index = next[0]++;
+            prefixHi[index] = node.hi;
+            prefixLo[index] = node.lo;
+            prefixLength[index] = node.length;
+            terminal[index] = node.terminal;
+            zero[index] = emit(skip(node.zero), prefixHi, prefixLo, prefixLength, zero, one, terminal, next);
+            one[index] = emit(skip(node.one), prefixHi, prefixLo, prefixLength, zero, one, terminal, next);
+            return index;
+        }
+    }
+}
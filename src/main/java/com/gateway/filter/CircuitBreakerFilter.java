@@ -1,56 +1,158 @@
 package com.gateway.filter;
 
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import com.gateway.circuitbreaker.SharedCircuitBreakers;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.timelimiter.TimeLimiter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Circuit breaker filter to prevent cascading failures.
  * 
  * When downstream services fail repeatedly, the circuit breaker opens and
  * immediately returns errors without calling the failing service, giving it
  * time to recover.
+ *
+ * Each gateway route has its own breaker, named by route id and looked up
+ * from the route the request matched (see {@link RouteCircuitBreakers}).
+ *
+ * Every call is recorded with the time until its upstream response started
+ * going out to the client, so calls slower than the breaker's slow-call
+ * threshold count towards its slow-call rate while a client slowly
+ * downloading a large body does not. Upstream 5xx responses count as failures
+ * as well as errors do; a request the client abandons is not recorded at all.
+ *
+ * Routes with a time limiter answer 504 once the upstream takes longer than
+ * its timeout to respond; the upstream call is cancelled and counts as a
+ * failure. The timeout ends when the response is committed, so a large body
+ * streamed to a slow client is never cut off part way.
+ *
+ * When breaker state is shared between nodes ({@link SharedCircuitBreakers}),
+ * a half-open breaker only lets probe calls through on the node holding its
+ * probe lock.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class CircuitBreakerFilter implements GlobalFilter, Ordered {
 
-    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    /**
+     * Exchange attribute set to {@code true} when the upstream call timed
+     * out, whether on the route's time limiter or the HTTP client's response
+     * timeout.
+     */
+    public static final String UPSTREAM_TIMEOUT_ATTR = CircuitBreakerFilter.class.getName() + ".upstreamTimeout";
+
+    private final RouteCircuitBreakers circuitBreakers;
+    private final Optional<SharedCircuitBreakers> sharedCircuitBreakers;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        String serviceName = extractServiceName(exchange);
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        RouteCircuitBreakers.Guard guard = circuitBreakers.forRoute(route);
+        CircuitBreaker circuitBreaker = guard.circuitBreaker();
 
-        return chain.filter(exchange)
-                .transformDeferred(CircuitBreakerOperator.of(
-                        circuitBreakerRegistry.circuitBreaker(serviceName)))
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return rejectOpen(exchange, circuitBreaker);
+        }
+        if (circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN && sharedCircuitBreakers.isPresent()
+                && !sharedCircuitBreakers.get().mayProbe(circuitBreaker)) {
+            // Another node probes the upstream for the fleet
+            circuitBreaker.releasePermission();
+            return rejectOpen(exchange, circuitBreaker);
+        }
+
+        long start = System.nanoTime();
+        AtomicLong committedAt = new AtomicLong();
+        exchange.getResponse().beforeCommit(() -> {
+            committedAt.compareAndSet(0, System.nanoTime());
+            return Mono.empty();
+        });
+        Mono<Void> call = chain.filter(exchange);
+        TimeLimiter timeLimiter = guard.timeLimiter();
+        if (timeLimiter != null) {
+            // Timing out cancels the upstream call, which closes its connection
+            Duration timeout = timeLimiter.getTimeLimiterConfig().getTimeoutDuration();
+            call = call.timeout(Mono.delay(timeout)
+                    .filter(tick -> committedAt.get() == 0)
+                    .switchIfEmpty(Mono.never()));
+        }
+        return call
+                .doOnSuccess(done -> {
+                    if (timeLimiter != null) {
+                        timeLimiter.onSuccess();
+                    }
+                    long elapsed = upstreamElapsed(start, committedAt);
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    if (status != null && status.is5xxServerError()) {
+                        circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, new UpstreamStatusException(status));
+                    } else {
+                        circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                    }
+                })
+                .doOnError(throwable -> {
+                    if (isTimeout(throwable)) {
+                        exchange.getAttributes().put(UPSTREAM_TIMEOUT_ATTR, true);
+                    }
+                    circuitBreaker.onError(upstreamElapsed(start, committedAt), TimeUnit.NANOSECONDS, throwable);
+                })
+                .doOnCancel(circuitBreaker::releasePermission)
+                .onErrorResume(TimeoutException.class, timeout -> {
+                    log.warn("Upstream timed out for route: {}", circuitBreaker.getName());
+                    if (timeLimiter != null) {
+                        timeLimiter.onError(timeout);
+                    }
+                    exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+                    return exchange.getResponse().setComplete();
+                })
                 .onErrorResume(throwable -> {
-                    log.error("Circuit breaker triggered for service: {}", serviceName, throwable);
+                    log.error("Circuit breaker triggered for route: {}", circuitBreaker.getName(), throwable);
                     exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
                     exchange.getResponse().getHeaders().add("X-Circuit-Breaker", "OPEN");
                     return exchange.getResponse().setComplete();
                 });
     }
 
-    private String extractServiceName(ServerWebExchange exchange) {
-        // Extract service name from path (e.g., /api/users -> users-service)
-        String path = exchange.getRequest().getPath().value();
-        String[] segments = path.split("/");
+    /**
+     * Nanoseconds from {@code start} until the response was committed, i.e.
+     * the upstream's status and headers were in, or until now if it has not
+     * been.
+     */
+    private static long upstreamElapsed(long start, AtomicLong committedAt) {
+        long end = committedAt.get();
+        return (end != 0 ? end : System.nanoTime()) - start;
+    }
 
-        if (segments.length > 2) {
-            return segments[2] + "-service";
+    private static boolean isTimeout(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return "default-service";
+    private Mono<Void> rejectOpen(ServerWebExchange exchange, CircuitBreaker circuitBreaker) {
+        log.warn("Circuit breaker open for route: {}", circuitBreaker.getName());
+        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        exchange.getResponse().getHeaders().add("X-Circuit-Breaker", "OPEN");
+        return exchange.getResponse().setComplete();
     }
 
     @Override
@@ -58,4 +160,15 @@ public class CircuitBreakerFilter implements GlobalFilter, Ordered {
         // Execute after rate limiting but before routing
         return -50;
     }
+
+    /**
+     * Failure recorded for an upstream 5xx response; the response itself is
+     * passed on unchanged.
+     */
+    static final class UpstreamStatusException extends RuntimeException {
+
+        UpstreamStatusException(HttpStatusCode status) {
+            super("Upstream responded " + status.value(), null, false, false);
+        }
+    }
 }
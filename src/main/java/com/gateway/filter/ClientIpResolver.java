@@ -0,0 +1,106 @@
+package com.gateway.filter;
+
+import com.gateway.config.RateLimitProperties;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Finds the real client address of a request.
+ *
+ * X-Forwarded-For is only believed as far as it was written by proxies in
+ * {@code rate-limit.trusted-proxies}: starting from the connection's remote
+ * address, hops are walked right to left while they are trusted proxies, and
+ * the first address that is not one is the client. Entries a client adds
+ * itself are therefore never reached, so spoofed headers cannot mint fresh
+ * rate limit keys. With no trusted proxies configured the remote address is
+ * always used.
+ */
+@Component
+public class ClientIpResolver {
+
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String UNKNOWN_CLIENT = "unknown";
+    private static final String CLIENT_IP_ATTR = ClientIpResolver.class.getName() + ".clientIp";
+
+    // Parsed address of the hop being examined, reused per thread
+    private static final ThreadLocal<long[]> ADDRESS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final CidrTrie trustedProxies;
+
+    public ClientIpResolver(RateLimitProperties properties) {
+        this.trustedProxies = CidrTrie.of(properties.getTrustedProxies());
+    }
+
+    /**
+     * Client address of the exchange, resolved once and kept as an exchange
+     * attribute for later filters.
+     */
+    public String resolve(ServerWebExchange exchange) {
+        String clientIp = exchange.getAttribute(CLIENT_IP_ATTR);
+        if (clientIp == null) {
+            clientIp = resolve(exchange.getRequest());
+            exchange.getAttributes().put(CLIENT_IP_ATTR, clientIp);
+        }
+        return clientIp;
+    }
+
+    /**
+     * Client address in canonical form (see {@link IpAddress}).
+     */
+    public String resolve(ServerHttpRequest request) {
+        InetSocketAddress remote = request.getRemoteAddress();
+        if (remote == null) {
+            return UNKNOWN_CLIENT;
+        }
+        InetAddress remoteAddress = remote.getAddress();
+        if (remoteAddress == null) {
+            return remote.getHostString();
+        }
+
+        long[] address = ADDRESS.get();
+        IpAddress.parse(remoteAddress, address);
+        List<String> forwarded = trustedProxies.contains(address[0], address[1])
+                ? request.getHeaders().get(X_FORWARDED_FOR) : null;
+        if (forwarded == null) {
+            return IpAddress.canonical(remoteAddress);
+        }
+
+        // Nearest hop first; later header lines were added by nearer proxies
+        String trusted = null;
+        int trustedFrom = 0;
+        int trustedTo = 0;
+        for (int line = forwarded.size() - 1; line >= 0; line--) {
+            String header = forwarded.get(line);
+            int end = header.length();
+            while (true) {
+                int comma = header.lastIndexOf(',', end - 1);
+                int from = comma + 1;
+                if (!IpAddress.parse(header, from, end, address)) {
+                    // Garbage hop: the trusted proxy that passed it on is all we know
+                    return trusted != null
+                            ? IpAddress.canonical(trusted, trustedFrom, trustedTo)
+                            : IpAddress.canonical(remoteAddress);
+                }
+                if (!trustedProxies.contains(address[0], address[1])) {
+                    return IpAddress.canonical(header, from, end);
+                }
+                trusted = header;
+                trustedFrom = from;
+                trustedTo = end;
+                if (comma < 0) {
+                    break;
+                }
+                end = comma;
+            }
+        }
+
+        // Every hop is a trusted proxy; the farthest is the best guess
+        return trusted != null ? IpAddress.canonical(trusted, trustedFrom, trustedTo)
+                : IpAddress.canonical(remoteAddress);
+    }
+}
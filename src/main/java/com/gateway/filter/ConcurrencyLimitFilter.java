@@ -0,0 +1,103 @@
+package com.gateway.filter;
+
+import com.gateway.concurrency.AdaptiveConcurrencyLimit;
+import com.gateway.config.ConcurrencyLimitProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests in flight to each route with an
+ * {@link AdaptiveConcurrencyLimit}, which follows the upstream's latency.
+ * Requests over the limit are answered 503 at once.
+ *
+ * Runs just before {@link CircuitBreakerFilter}, so rejected requests never
+ * count against the breaker. Latency is sampled when the upstream's response
+ * is committed, so a client slowly downloading the body does not count. An
+ * upstream call that timed out is sampled at the time waited for it, a lower
+ * bound on its latency, so an upstream that hangs drives the limit down. Other
+ * requests answered by the gateway itself, such as an open breaker's 503 or
+ * a failed connection, free their slot without a sample. The limit and
+ * in-flight count of each route are exported as the
+ * {@code gateway.concurrency.limit} and {@code gateway.concurrency.in.flight}
+ * gauges.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+        AdaptiveConcurrencyLimit limit = limits.computeIfAbsent(route.getId(), this::create);
+
+        if (!limit.tryAcquire()) {
+            log.warn("Concurrency limit {} reached for route: {}", limit.getLimit(), route.getId());
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+
+        long start = System.nanoTime();
+        AtomicLong rtt = new AtomicLong(-1);
+        exchange.getResponse().beforeCommit(() -> {
+            if (exchange.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR) != null) {
+                rtt.compareAndSet(-1, System.nanoTime() - start);
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+                .doFinally(signal -> {
+                    long sample = rtt.get();
+                    if (sample < 0 && Boolean.TRUE.equals(
+                            exchange.getAttribute(CircuitBreakerFilter.UPSTREAM_TIMEOUT_ATTR))) {
+                        sample = System.nanoTime() - start;
+                    }
+                    if (sample < 0) {
+                        limit.release();
+                    } else {
+                        limit.release(sample);
+                    }
+                });
+    }
+
+    private AdaptiveConcurrencyLimit create(String routeId) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties);
+        Gauge.builder("gateway.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Requests allowed in flight to the route")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Requests in flight to the route")
+                .tag("route", routeId)
+                .register(meterRegistry);
+        return limit;
+    }
+
+    @Override
+    public int getOrder() {
+        // Between rate limiting and the circuit breaker
+        return -60;
+    }
+}
@@ -0,0 +1,58 @@
+package com.gateway.filter;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Global filter that checks the client address against the
+ * {@link IpAccessList} before rate limiting.
+ *
+ * Denied clients get 403 straight away. Allowed clients are marked so that
+ * {@link RateLimitFilter} lets them through without a rate limit check, which
+ * saves internal callers a Redis call per request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IpAccessFilter implements GlobalFilter, Ordered {
+
+    /**
+     * Exchange attribute set to {@code true} for allow-listed clients.
+     */
+    public static final String SKIP_RATE_LIMIT_ATTR = IpAccessFilter.class.getName() + ".skipRateLimit";
+
+    private final IpAccessList accessList;
+    private final ClientIpResolver clientIpResolver;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (accessList.isEmpty()) {
+            return chain.filter(exchange);
+        }
+
+        String clientIp = clientIpResolver.resolve(exchange);
+        IpAccessList.Access access = accessList.check(clientIp);
+        if (access == IpAccessList.Access.DENIED) {
+            log.warn("Request denied for IP: {}", clientIp);
+            exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+            return exchange.getResponse().setComplete();
+        }
+        if (access == IpAccessList.Access.ALLOWED) {
+            exchange.getAttributes().put(SKIP_RATE_LIMIT_ATTR, Boolean.TRUE);
+        }
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        // Ahead of RateLimitFilter
+        return -150;
+    }
+}
@@ -0,0 +1,167 @@
+package com.gateway.filter;
+
+import com.gateway.config.IpAccessProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allowed and denied client address blocks, each compiled into a
+ * {@link CidrTrie}.
+ *
+ * Blocks come from {@code ip-access.allow} and {@code ip-access.deny} plus
+ * the optional allow and deny files, which are polled for changes. A reload
+ * builds both tries off the request path and swaps them in with one volatile
+ * write, so lookups never lock and never see half of a change; a file that
+ * fails to parse leaves the current lists in place. A file that goes missing
+ * keeps the entries last loaded from it, and an error is logged, so a botched
+ * deploy does not silently drop the deny list; only a file emptied on purpose
+ * clears them.
+ */
+@Slf4j
+@Component
+public class IpAccessList {
+
+    public enum Access {
+        ALLOWED, DENIED, UNLISTED
+    }
+
+    // Parsed client address, reused per thread
+    private static final ThreadLocal<long[]> ADDRESS = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final IpAccessProperties properties;
+    private volatile Lists lists;
+    private List<String> allowFileBlocks = List.of();
+    private List<String> denyFileBlocks = List.of();
+    private long allowFileModified;
+    private long denyFileModified;
+    private Disposable watcher;
+
+    public IpAccessList(IpAccessProperties properties) throws IOException {
+        this.properties = properties;
+        this.lists = load();
+    }
+
+    /**
+     * Whether nothing is listed, so lookups can be skipped.
+     */
+    public boolean isEmpty() {
+        Lists current = lists;
+        return current.allow().isEmpty() && current.deny().isEmpty();
+    }
+
+    /**
+     * Look up a client address in canonical form; anything that is not an IP
+     * address is unlisted.
+     */
+    public Access check(String ip) {
+        long[] address = ADDRESS.get();
+        if (!IpAddress.parse(ip, 0, ip.length(), address)) {
+            return Access.UNLISTED;
+        }
+        Lists current = lists;
+        if (current.deny().contains(address[0], address[1])) {
+            return Access.DENIED;
+        }
+        if (current.allow().contains(address[0], address[1])) {
+            return Access.ALLOWED;
+        }
+        return Access.UNLISTED;
+    }
+
+    @PostConstruct
+    void startWatcher() {
+        if (properties.getAllowFile() == null && properties.getDenyFile() == null) {
+            return;
+        }
+        long interval = properties.getFilePollInterval().toMillis();
+        // Large lists take a while to read, so keep them off the parallel workers
+        watcher = Schedulers.boundedElastic().schedulePeriodically(
+                this::reloadIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopWatcher() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+    }
+
+    void reloadIfChanged() {
+        long allowModified = modified(properties.getAllowFile());
+        long denyModified = modified(properties.getDenyFile());
+        if (allowModified == allowFileModified && denyModified == denyFileModified) {
+            return;
+        }
+
+        try {
+            lists = load();
+            log.info("Reloaded IP access lists");
+        } catch (IOException | RuntimeException e) {
+            log.error("Ignoring invalid IP access list file", e);
+        }
+    }
+
+    /**
+     * Build both lists, noting the file versions read so a broken file is
+     * not re-read every poll.
+     */
+    private Lists load() throws IOException {
+        allowFileModified = modified(properties.getAllowFile());
+        denyFileModified = modified(properties.getDenyFile());
+        List<String> allowFromFile = fileBlocks(properties.getAllowFile(), allowFileBlocks);
+        List<String> denyFromFile = fileBlocks(properties.getDenyFile(), denyFileBlocks);
+        Lists loaded = new Lists(
+                CidrTrie.of(concat(properties.getAllow(), allowFromFile)),
+                CidrTrie.of(concat(properties.getDeny(), denyFromFile)));
+        // Only remembered once both lists have parsed
+        allowFileBlocks = allowFromFile;
+        denyFileBlocks = denyFromFile;
+        return loaded;
+    }
+
+    /**
+     * Blocks listed in a file, or {@code previous} if the file is missing.
+     */
+    private static List<String> fileBlocks(String file, List<String> previous) throws IOException {
+        if (file == null) {
+            return List.of();
+        }
+        Path path = Path.of(file);
+        if (!Files.exists(path)) {
+            log.error("IP access list file {} is missing, keeping the {} entries last loaded from it",
+                    file, previous.size());
+            return previous;
+        }
+        try (var lines = Files.lines(path)) {
+            return lines.map(line -> {
+                int comment = line.indexOf('#');
+                return (comment < 0 ? line : line.substring(0, comment)).trim();
+            }).filter(line -> !line.isEmpty()).toList();
+        }
+    }
+
+    private static List<String> concat(List<String> configured, List<String> fromFile) {
+        List<String> blocks = new ArrayList<>(configured.size() + fromFile.size());
+        blocks.addAll(configured);
+        blocks.addAll(fromFile);
+        return blocks;
+    }
+
+    private static long modified(String file) {
+        return file != null ? Path.of(file).toFile().lastModified() : 0;
+    }
+
+    private record Lists(CidrTrie allow, CidrTrie deny) {
+    }
+}
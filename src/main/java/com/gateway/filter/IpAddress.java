@@ -0,0 +1,335 @@
+package com.gateway.filter;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Parsing and canonical text form of IPv4 and IPv6 addresses, used to turn
+ * client addresses into rate limit keys.
+ *
+ * Addresses are parsed straight from the header text by index, without
+ * splitting, trimming or regexes, into a 128-bit value held as two longs;
+ * IPv4 addresses are stored IPv4-mapped ({@code ::ffff:a.b.c.d}). Equal
+ * addresses always give the same key however they were written, and an IPv4
+ * address already in canonical form is returned as the original string, so
+ * the common case allocates nothing.
+ */
+public final class IpAddress {
+
+    private static final long V4_MAPPED = 0xffffL << 32;
+
+    private IpAddress() {
+    }
+
+    /**
+     * Canonical form of the address in {@code text[from, to)}, ignoring
+     * surrounding whitespace.
+     *
+     * @return dotted quad for IPv4 (and IPv4-mapped IPv6), RFC 5952 form for
+     * other IPv6, or null if the text is not an IP address
+     */
+    public static String canonical(String text, int from, int to) {
+        while (from < to && isSpace(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && isSpace(text.charAt(to - 1))) {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+
+        int colon = text.indexOf(':', from);
+        if (colon < 0 || colon >= to) {
+            long v4 = parseV4(text, from, to);
+            if (v4 < 0) {
+                return null;
+            }
+            if (hasLeadingZero(text, from, to)) {
+                return formatV4(v4);
+            }
+            return from == 0 && to == text.length() ? text : text.substring(from, to);
+        }
+
+        long[] address = new long[2];
+        return parse(text, from, to, address) ? format(address[0], address[1]) : null;
+    }
+
+    /**
+     * Canonical form of a socket address, matching {@link #canonical(String, int, int)}.
+     */
+    public static String canonical(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return address.getHostAddress();
+        }
+        long[] parsed = new long[2];
+        parse(address, parsed);
+        return format(parsed[0], parsed[1]);
+    }
+
+    /**
+     * Socket address as two longs, like {@link #parse(CharSequence, int, int, long[])}.
+     */
+    public static void parse(InetAddress address, long[] out) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            out[0] = 0;
+            out[1] = V4_MAPPED | ((bytes[0] & 0xffL) << 24) | ((bytes[1] & 0xff) << 16)
+                    | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+            return;
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (bytes[i] & 0xff);
+            lo = (lo << 8) | (bytes[i + 8] & 0xff);
+        }
+        out[0] = hi;
+        out[1] = lo;
+    }
+
+    /**
+     * Parse an address in {@code text[from, to)}, ignoring surrounding
+     * whitespace, into {@code out[0]} (upper 64 bits) and {@code out[1]}
+     * (lower 64 bits).
+     *
+     * @return false if the text is not an IP address
+     */
+    public static boolean parse(CharSequence text, int from, int to, long[] out) {
+        while (from < to && isSpace(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && isSpace(text.charAt(to - 1))) {
+            to--;
+        }
+        if (from == to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == ':') {
+                return parseV6(text, from, to, out);
+            }
+        }
+        long v4 = parseV4(text, from, to);
+        if (v4 < 0) {
+            return false;
+        }
+        out[0] = 0;
+        out[1] = V4_MAPPED | v4;
+        return true;
+    }
+
+    public static boolean isV4(long hi, long lo) {
+        return hi == 0 && (lo & 0xffffffff00000000L) == V4_MAPPED;
+    }
+
+    /**
+     * Text form of a parsed address: dotted quad for IPv4, RFC 5952 (lower
+     * case, longest zero run compressed) for IPv6.
+     */
+    public static String format(long hi, long lo) {
+        if (isV4(hi, lo)) {
+            return formatV4(lo & 0xffffffffL);
+        }
+
+        // Longest run of at least two zero groups, the first if tied
+        int bestStart = -1;
+        int bestLength = 1;
+        int runStart = -1;
+        for (int i = 0; i < 8; i++) {
+            if (group(hi, lo, i) == 0) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+                if (i - runStart + 1 > bestLength) {
+                    bestStart = runStart;
+                    bestLength = i - runStart + 1;
+                }
+            } else {
+                runStart = -1;
+            }
+        }
+
+        StringBuilder text = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                text.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(group(hi, lo, i)));
+        }
+        return text.toString();
+    }
+
+    private static int group(long hi, long lo, int index) {
+        long half = index < 4 ? hi : lo;
+        return (int) (half >>> (48 - 16 * (index & 3))) & 0xffff;
+    }
+
+    private static String formatV4(long v4) {
+        return ((v4 >>> 24) & 0xff) + "." + ((v4 >>> 16) & 0xff) + "." + ((v4 >>> 8) & 0xff) + "." + (v4 & 0xff);
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value, or -1 if invalid
+     */
+    private static long parseV4(CharSequence text, int from, int to) {
+        long value = 0;
+        int parts = 0;
+        int octet = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && parts < 3) {
+                value = (value << 8) | octet;
+                parts++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || parts != 3) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+
+    private static boolean hasLeadingZero(CharSequence text, int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            boolean partStart = i == from || text.charAt(i - 1) == '.';
+            if (partStart && text.charAt(i) == '0' && text.charAt(i + 1) != '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Groups before a {@code ::} collect in one 128-bit accumulator and those
+     * after it in another; the first is then shifted up past the zero groups
+     * the {@code ::} stands for.
+     */
+    private static boolean parseV6(CharSequence text, int from, int to, long[] out) {
+        long headHi = 0;
+        long headLo = 0;
+        long tailHi = 0;
+        long tailLo = 0;
+        int headGroups = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+
+        int i = from;
+        if (to - from >= 2 && text.charAt(from) == ':' && text.charAt(from + 1) == ':') {
+            compressed = true;
+            i += 2;
+        } else if (text.charAt(from) == ':') {
+            return false;
+        }
+
+        while (i < to) {
+            int start = i;
+            int value = 0;
+            int digits = 0;
+            while (i < to && digits <= 4) {
+                int hex = hexDigit(text.charAt(i));
+                if (hex < 0) {
+                    break;
+                }
+                value = (value << 4) | hex;
+                digits++;
+                i++;
+            }
+
+            int bits = 16;
+            if (i < to && text.charAt(i) == '.') {
+                // Trailing embedded IPv4 counts as two groups
+                long v4 = parseV4(text, start, to);
+                if (v4 < 0) {
+                    return false;
+                }
+                value = (int) v4;
+                bits = 32;
+                i = to;
+            } else if (digits == 0 || digits > 4) {
+                return false;
+            }
+
+            long mask = bits == 32 ? 0xffffffffL : 0xffffL;
+            if (compressed) {
+                tailHi = (tailHi << bits) | (tailLo >>> (64 - bits));
+                tailLo = (tailLo << bits) | (value & mask);
+                tailGroups += bits / 16;
+            } else {
+                headHi = (headHi << bits) | (headLo >>> (64 - bits));
+                headLo = (headLo << bits) | (value & mask);
+                headGroups += bits / 16;
+            }
+
+            if (i == to) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == to) {
+                return false;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+            }
+        }
+
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) {
+            return false;
+        }
+
+        int shift = 16 * (8 - headGroups);
+        long hi;
+        long lo;
+        if (shift == 0) {
+            hi = headHi;
+            lo = headLo;
+        } else if (shift < 64) {
+            hi = (headHi << shift) | (headLo >>> (64 - shift));
+            lo = headLo << shift;
+        } else if (shift < 128) {
+            hi = headLo << (shift - 64);
+            lo = 0;
+        } else {
+            hi = 0;
+            lo = 0;
+        }
+        out[0] = hi | tailHi;
+        out[1] = lo | tailLo;
+        return true;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
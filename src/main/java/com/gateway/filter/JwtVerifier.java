@@ -0,0 +1,175 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.config.RateLimitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+/**
+ * Checks bearer JWTs against the keys in {@code rate-limit.jwt}, so that
+ * {@code jwt-sub} rate limit keys cannot be forged.
+ *
+ * HS256 tokens are checked with the shared secret and RS256 tokens with the
+ * public key. Any other algorithm, {@code none} included, or one whose key is
+ * not configured is refused, as are expired and not yet valid tokens and, if
+ * an issuer is configured, tokens from anyone else.
+ */
+@Slf4j
+@Component
+public class JwtVerifier {
+
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final String HMAC_SHA256 = "HmacSHA256";
+
+    private final ObjectMapper objectMapper;
+    private final SecretKeySpec secret;
+    private final PublicKey publicKey;
+    private final String issuer;
+    private final long clockSkewSeconds;
+
+    // Mac instances are not thread-safe; each thread keeps one
+    private final ThreadLocal<Mac> mac;
+
+    public JwtVerifier(RateLimitProperties properties, ObjectMapper objectMapper) {
+        RateLimitProperties.Jwt jwt = properties.getJwt();
+        this.objectMapper = objectMapper;
+        this.secret = isSet(jwt.getSecret()) ? secretKey(jwt.getSecret()) : null;
+        this.publicKey = isSet(jwt.getPublicKey()) ? publicKey(jwt.getPublicKey()) : null;
+        this.issuer = isSet(jwt.getIssuer()) ? jwt.getIssuer() : null;
+        this.clockSkewSeconds = jwt.getClockSkew().toSeconds();
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac hmac = Mac.getInstance(HMAC_SHA256);
+                hmac.init(secret);
+                return hmac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+            }
+        });
+    }
+
+    /**
+     * Whether any key is configured; without one every token is refused.
+     */
+    public boolean isConfigured() {
+        return secret != null || publicKey != null;
+    }
+
+    /**
+     * Subject of a signed, currently valid token.
+     *
+     * @param token the compact JWT, without the {@code Bearer} prefix
+     * @return the claims, or null if the token is invalid or has no
+     * {@code sub}
+     */
+    public Claims verify(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            return null;
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            JsonNode header = objectMapper.readTree(decoder.decode(token.substring(0, headerEnd)));
+            byte[] signed = token.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = decoder.decode(token.substring(payloadEnd + 1));
+            if (!signatureValid(header.path("alg").asText(), signed, signature)) {
+                return null;
+            }
+
+            JsonNode claims = objectMapper.readTree(decoder.decode(token.substring(headerEnd + 1, payloadEnd)));
+            long now = System.currentTimeMillis() / 1000;
+            JsonNode expires = claims.get("exp");
+            JsonNode notBefore = claims.get("nbf");
+            if (expires != null && (!expires.isNumber() || expires.asLong() + clockSkewSeconds < now)) {
+                return null;
+            }
+            if (notBefore != null && (!notBefore.isNumber() || notBefore.asLong() - clockSkewSeconds > now)) {
+                return null;
+            }
+            if (issuer != null && !issuer.equals(claims.path("iss").asText(null))) {
+                return null;
+            }
+            JsonNode subject = claims.get("sub");
+            if (subject == null || !subject.isTextual()) {
+                return null;
+            }
+            return new Claims(subject.asText(),
+                    expires != null ? expires.asLong() + clockSkewSeconds : Long.MAX_VALUE);
+        } catch (IllegalArgumentException | IOException | GeneralSecurityException e) {
+            log.debug("Unreadable bearer token", e);
+            return null;
+        }
+    }
+
+    private boolean signatureValid(String algorithm, byte[] signed, byte[] signature)
+            throws GeneralSecurityException {
+        switch (algorithm) {
+            case "HS256" -> {
+                return secret != null && MessageDigest.isEqual(mac.get().doFinal(signed), signature);
+            }
+            case "RS256" -> {
+                if (publicKey == null) {
+                    return false;
+                }
+                Signature rsa = Signature.getInstance("SHA256withRSA");
+                rsa.initVerify(publicKey);
+                rsa.update(signed);
+                return rsa.verify(signature);
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private static SecretKeySpec secretKey(String secret) {
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException(
+                    "rate-limit.jwt.secret must be at least " + MIN_SECRET_BYTES + " bytes for HS256");
+        }
+        return new SecretKeySpec(bytes, HMAC_SHA256);
+    }
+
+    private static PublicKey publicKey(String pem) {
+        String base64 = pem.replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s", "");
+        try {
+            return KeyFactory.getInstance("RSA")
+                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64)));
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            throw new IllegalArgumentException("rate-limit.jwt.public-key is not a PEM RSA public key", e);
+        }
+    }
+
+    private static boolean isSet(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    /**
+     * Claims of a verified token.
+     *
+     * @param subject   the {@code sub} claim
+     * @param expiresAt epoch second after which the token is no longer
+     *                  accepted, or {@link Long#MAX_VALUE} if it has no
+     *                  {@code exp}
+     */
+    public record Claims(String subject, long expiresAt) {
+    }
+}
@@ -1,57 +1,99 @@
 package com.gateway.filter;
 
+import com.gateway.config.RateLimitProperties;
+import com.gateway.ratelimit.RateLimitLevel;
+import com.gateway.ratelimit.RateLimitPolicyRegistry;
 import com.gateway.ratelimit.TokenBucketRateLimiter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * Global filter that applies rate limiting to all incoming requests.
- * Uses client IP address as the rate limit key.
+ * Requests are keyed as the route's {@code key} setting says, see
+ * {@link RateLimitKeyResolvers}; by default by client IP address, as resolved
+ * through trusted proxies by {@link ClientIpResolver}. Each key has a separate
+ * bucket per route sized by the policy for that route and the key's tier. Each
+ * request takes as many tokens as the route's cost rules charge for it.
+ * Where configured, the same request is also checked against its API key's
+ * bucket, the route's ceiling and the gateway-wide ceiling, all in one
+ * decision.
+ *
+ * Clients on the IP allow list were already let through by
+ * {@link IpAccessFilter} and are not limited.
+ *
+ * Every response carries RateLimit-Limit, RateLimit-Remaining and
+ * RateLimit-Reset from that decision, and rejections a Retry-After taken from
+ * the bucket's actual refill schedule. A request costing more than its
+ * bucket can ever hold is rejected with 413 and no Retry-After.
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class RateLimitFilter implements GlobalFilter, Ordered {
 
+    private static final String DEFAULT_ROUTE = "default";
+
+    // IETF RateLimit header fields draft; reset is in seconds
+    private static final String RATE_LIMIT_LIMIT = "RateLimit-Limit";
+    private static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+    private static final String RATE_LIMIT_RESET = "RateLimit-Reset";
+
     private final TokenBucketRateLimiter rateLimiter;
+    private final RateLimitPolicyRegistry policyRegistry;
+    private final RateLimitProperties properties;
+    private final RateLimitKeyResolvers keyResolvers;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        String clientIp = getClientIp(exchange);
+        if (Boolean.TRUE.equals(exchange.getAttribute(IpAccessFilter.SKIP_RATE_LIMIT_ATTR))) {
+            return chain.filter(exchange);
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : DEFAULT_ROUTE;
+        String clientKey = keyResolvers.resolve(policyRegistry.key(routeId), exchange);
+        String apiKey = exchange.getRequest().getHeaders().getFirst(properties.getApiKeyHeader());
+        List<RateLimitLevel> levels = policyRegistry.levels(routeId, clientKey, apiKey);
+        long cost = policyRegistry.cost(routeId, exchange.getRequest());
 
-        return rateLimiter.tryConsume(clientIp)
-                .flatMap(allowed -> {
-                    if (allowed) {
+        return rateLimiter.tryConsume(levels, cost)
+                .flatMap(decision -> {
+                    HttpHeaders headers = exchange.getResponse().getHeaders();
+                    headers.set(RATE_LIMIT_LIMIT, String.valueOf(decision.limit()));
+                    headers.set(RATE_LIMIT_REMAINING, String.valueOf(decision.remaining()));
+                    headers.set(RATE_LIMIT_RESET, String.valueOf(toSeconds(decision.resetMillis())));
+                    if (decision.allowed()) {
                         // Request allowed, proceed with filter chain
                         return chain.filter(exchange);
+                    } else if (!decision.retryable()) {
+                        // Costs more than the bucket holds, so retrying is pointless
+                        log.warn("Request from client {} costs more than its rate limit allows", clientKey);
+                        exchange.getResponse().setStatusCode(HttpStatus.PAYLOAD_TOO_LARGE);
+                        return exchange.getResponse().setComplete();
                     } else {
                         // Rate limit exceeded
-                        log.warn("Rate limit exceeded for IP: {}", clientIp);
+                        log.warn("Rate limit exceeded for client: {}", clientKey);
                         exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
-                        exchange.getResponse().getHeaders().add("X-RateLimit-Retry-After", "60");
+                        headers.set(HttpHeaders.RETRY_AFTER,
+                                String.valueOf(Math.max(1, toSeconds(decision.retryAfterMillis()))));
                         return exchange.getResponse().setComplete();
                     }
                 });
     }
 
-    private String getClientIp(ServerWebExchange exchange) {
-        // Check X-Forwarded-For header first (for proxied requests)
-        String forwardedFor = exchange.getRequest().getHeaders().getFirst("X-Forwarded-For");
-        if (forwardedFor != null && !forwardedFor.isEmpty()) {
-            return forwardedFor.split(",")[0].trim();
-        }
-
-        // Fall back to remote address
-        return exchange.getRequest().getRemoteAddress() != null
-                ? exchange.getRequest().getRemoteAddress().getAddress().getHostAddress()
-                : "unknown";
+    private static long toSeconds(long millis) {
+        return (millis + 999) / 1000;
     }
 
     @Override
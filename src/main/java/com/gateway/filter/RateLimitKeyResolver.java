@@ -0,0 +1,18 @@
+package com.gateway.filter;
+
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Picks the rate limit key of a request, i.e. which bucket it counts against
+ * on its route.
+ *
+ * Resolvers run on every request and must not block.
+ */
+@FunctionalInterface
+public interface RateLimitKeyResolver {
+
+    /**
+     * @return the key, or null if the request carries nothing to key on
+     */
+    String resolve(ServerWebExchange exchange);
+}
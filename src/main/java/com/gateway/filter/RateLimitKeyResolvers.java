@@ -0,0 +1,157 @@
+package com.gateway.filter;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.ratelimit.RateLimitPolicyRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Built-in {@link RateLimitKeyResolver}s, combined per route from the
+ * {@code key} setting of the rate limit policies:
+ * <ul>
+ *   <li>{@code ip}: client address, see {@link ClientIpResolver}</li>
+ *   <li>{@code api-key}: value of the {@code rate-limit.api-key-header}, if
+ *   it is one of the issued {@code rate-limit.api-keys}</li>
+ *   <li>{@code jwt-sub}: {@code sub} claim of the bearer token, once
+ *   {@link JwtVerifier} has checked it</li>
+ *   <li>{@code header:<name>}: value of any request header</li>
+ *   <li>{@code route}: the route id, so all clients share one bucket</li>
+ * </ul>
+ * Every part but the address is prefixed with its kind ({@code apikey:},
+ * {@code jwt:}, {@code hdr:}, {@code route:}), so a value chosen by a client
+ * never lands in another kind's bucket. Several names make a composite key
+ * joined with {@code :}. A request missing any part falls back to its client
+ * address.
+ *
+ * Verified subjects are kept until their token expires in a bounded
+ * direct-mapped cache keyed by the raw token, so a repeat caller costs one
+ * array read and a string compare instead of a signature check. Tokens that
+ * fail verification are never cached.
+ */
+@Slf4j
+@Component
+public class RateLimitKeyResolvers {
+
+    private static final String BEARER = "Bearer ";
+    private static final String HEADER_PREFIX = "header:";
+    private static final String API_KEY_KEY_PREFIX = "apikey:";
+    private static final String JWT_KEY_PREFIX = "jwt:";
+    private static final String HEADER_KEY_PREFIX = "hdr:";
+    private static final String ROUTE_KEY_PREFIX = "route:";
+    private static final int SUBJECT_CACHE_SIZE = 4096; // Power of two
+
+    private final ClientIpResolver clientIpResolver;
+    private final RateLimitPolicyRegistry policies;
+    private final JwtVerifier jwtVerifier;
+    private final String apiKeyHeader;
+
+    // Compiled resolver per key setting; settings change only on policy reload
+    private final ConcurrentHashMap<List<String>, RateLimitKeyResolver> resolvers = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<CachedSubject> subjects = new AtomicReferenceArray<>(SUBJECT_CACHE_SIZE);
+
+    public RateLimitKeyResolvers(ClientIpResolver clientIpResolver, RateLimitPolicyRegistry policies,
+                                 JwtVerifier jwtVerifier, RateLimitProperties properties) {
+        this.clientIpResolver = clientIpResolver;
+        this.policies = policies;
+        this.jwtVerifier = jwtVerifier;
+        this.apiKeyHeader = properties.getApiKeyHeader();
+    }
+
+    /**
+     * Key of the request under the given key setting.
+     */
+    public String resolve(List<String> key, ServerWebExchange exchange) {
+        String resolved = resolvers.computeIfAbsent(key, this::compile).resolve(exchange);
+        return resolved != null ? resolved : clientIpResolver.resolve(exchange);
+    }
+
+    private RateLimitKeyResolver compile(List<String> names) {
+        try {
+            List<RateLimitKeyResolver> parts = new ArrayList<>(names.size());
+            for (String name : names) {
+                parts.add(builtIn(name));
+            }
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            return exchange -> {
+                StringBuilder key = new StringBuilder();
+                for (RateLimitKeyResolver part : parts) {
+                    String value = part.resolve(exchange);
+                    if (value == null) {
+                        return null;
+                    }
+                    if (key.length() > 0) {
+                        key.append(':');
+                    }
+                    key.append(value);
+                }
+                return key.toString();
+            };
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid rate limit key {}, limiting by client address instead", names, e);
+            return clientIpResolver::resolve;
+        }
+    }
+
+    private RateLimitKeyResolver builtIn(String name) {
+        if (name.startsWith(HEADER_PREFIX)) {
+            String header = name.substring(HEADER_PREFIX.length());
+            return exchange -> {
+                String value = exchange.getRequest().getHeaders().getFirst(header);
+                return value != null ? HEADER_KEY_PREFIX + value : null;
+            };
+        }
+        return switch (name) {
+            case "ip" -> clientIpResolver::resolve;
+            case "api-key" -> exchange -> {
+                String apiKey = exchange.getRequest().getHeaders().getFirst(apiKeyHeader);
+                return policies.isIssuedApiKey(apiKey) ? API_KEY_KEY_PREFIX + apiKey : null;
+            };
+            case "jwt-sub" -> this::jwtSubject;
+            case "route" -> exchange -> {
+                Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+                return route != null ? ROUTE_KEY_PREFIX + route.getId() : null;
+            };
+            default -> throw new IllegalArgumentException("Unknown rate limit key resolver: " + name);
+        };
+    }
+
+    private String jwtSubject(ServerWebExchange exchange) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return null;
+        }
+
+        int slot = authorization.hashCode() & (SUBJECT_CACHE_SIZE - 1);
+        CachedSubject cached = subjects.get(slot);
+        if (cached != null && cached.authorization().equals(authorization)
+                && cached.expiresAt() >= System.currentTimeMillis() / 1000) {
+            return cached.key();
+        }
+
+        JwtVerifier.Claims claims = jwtVerifier.verify(authorization.substring(BEARER.length()).trim());
+        if (claims == null) {
+            return null;
+        }
+        String key = JWT_KEY_PREFIX + claims.subject();
+        subjects.set(slot, new CachedSubject(authorization, key, claims.expiresAt()));
+        return key;
+    }
+
+    /**
+     * Rate limit key of one verified token, valid until {@code expiresAt}
+     * (epoch seconds).
+     */
+    private record CachedSubject(String authorization, String key, long expiresAt) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.gateway.filter;
+
+import com.gateway.config.Resilience4jConfig;
+import com.gateway.config.ResilienceProperties;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker and upstream timeout of each gateway route, named by route
+ * id and configured per route in the {@code resilience4j} section.
+ *
+ * Both are created for every route whenever the routes are (re)loaded and
+ * kept in a map keyed by the {@link Route} instance the gateway puts on the
+ * exchange, so finding a request's breaker is an identity hash lookup with no
+ * string handling. The map is rebuilt off the request path and swapped in
+ * with one volatile write. Guards are also kept by route id, so a rebuild
+ * reuses them and a route not in the map yet, such as one matched during a
+ * refresh, gets its guard built once rather than on every request.
+ *
+ * Routes only get a timeout if they have a time limiter instance or there is
+ * a {@code default} time limiter config.
+ */
+@Slf4j
+@Component
+public class RouteCircuitBreakers {
+
+    // Breaker for requests that matched no route
+    private static final String DEFAULT_BREAKER = "default";
+
+    private final CircuitBreakerRegistry registry;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final ResilienceProperties properties;
+    private final Guard defaultGuard;
+    private final ConcurrentHashMap<String, Guard> byId = new ConcurrentHashMap<>();
+    private volatile Map<Route, Guard> byRoute = Map.of();
+
+    public RouteCircuitBreakers(CircuitBreakerRegistry registry, TimeLimiterRegistry timeLimiterRegistry,
+                                ResilienceProperties properties) {
+        this.registry = registry;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.properties = properties;
+        this.defaultGuard = guard(DEFAULT_BREAKER);
+    }
+
+    /**
+     * Breaker and timeout for a matched route, or the defaults if there is
+     * none.
+     */
+    public Guard forRoute(Route route) {
+        if (route == null) {
+            return defaultGuard;
+        }
+        Guard guard = byRoute.get(route);
+        return guard != null ? guard : byId.computeIfAbsent(route.getId(), this::guard);
+    }
+
+    @EventListener
+    public void onRoutesRefreshed(RefreshRoutesResultEvent event) {
+        if (!event.isSuccess() || !(event.getSource() instanceof RouteLocator locator)) {
+            return;
+        }
+        locator.getRoutes().collectList().subscribe(this::rebuild,
+                e -> log.error("Failed to load routes for circuit breakers", e));
+    }
+
+    private void rebuild(List<Route> routes) {
+        Map<Route, Guard> guards = new IdentityHashMap<>(routes.size() * 2);
+        Set<String> routeIds = new HashSet<>();
+        for (Route route : routes) {
+            guards.put(route, byId.computeIfAbsent(route.getId(), this::guard));
+            routeIds.add(route.getId());
+        }
+        // Drop guards of removed routes
+        byId.keySet().retainAll(routeIds);
+        byRoute = guards;
+        log.debug("Circuit breakers ready for {} routes", routes.size());
+    }
+
+    private Guard guard(String routeId) {
+        ResilienceProperties.Section<?> timeLimiters = properties.getTimelimiter();
+        boolean timed = timeLimiters.getInstances().containsKey(routeId)
+                || timeLimiters.getConfigs().containsKey(Resilience4jConfig.DEFAULT_CONFIG);
+        return new Guard(registry.circuitBreaker(routeId), timed ? timeLimiterRegistry.timeLimiter(routeId) : null);
+    }
+
+    /**
+     * A route's breaker, and its time limiter or null if it has no timeout.
+     */
+    public record Guard(CircuitBreaker circuitBreaker, TimeLimiter timeLimiter) {
+    }
+}
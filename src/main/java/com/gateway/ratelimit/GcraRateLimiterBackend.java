@@ -0,0 +1,64 @@
+package com.gateway.ratelimit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generic cell rate algorithm limits kept in Redis.
+ *
+ * GCRA is equivalent to a token bucket of the same capacity and refill rate,
+ * but stores one number per key, the theoretical arrival time of the next
+ * request, instead of a token count plus a timestamp. Each decision is one
+ * script call, and the retry-after of a denied request falls straight out of
+ * the arrival time. A request checked against several levels is decided
+ * for all their keys in the same script call.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "gcra")
+public class GcraRateLimiterBackend implements RateLimiterBackend {
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+    private static final String TAT_PREFIX = "rate_limit:gcra:";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> SCRIPT =
+            (RedisScript) RedisScript.of(new ClassPathResource("scripts/gcra.lua"), List.class);
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        return tryConsumeAll(List.of(new RateLimitLevel(key, policy)), cost);
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        return execute(levels, cost).map(result -> RateLimitDecision.fromScript(result, 0, result.get(4)));
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return execute(List.of(new RateLimitLevel(key, policy)), 0).map(result -> result.get(1));
+    }
+
+    private Mono<List<Long>> execute(List<RateLimitLevel> levels, long cost) {
+        List<String> keys = new ArrayList<>(levels.size());
+        List<String> args = new ArrayList<>(levels.size() * 3);
+        for (RateLimitLevel level : levels) {
+            keys.add(TAT_PREFIX + level.key());
+            args.add(String.valueOf(level.policy().capacity()));
+            args.add(String.valueOf(level.policy().refillRate()));
+            args.add(String.valueOf(cost));
+        }
+
+        return redisTemplate.execute(SCRIPT, keys, args).next();
+    }
+}
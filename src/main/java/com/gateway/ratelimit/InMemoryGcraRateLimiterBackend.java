@@ -0,0 +1,168 @@
+package com.gateway.ratelimit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm limits kept in gateway memory.
+ *
+ * Each key is a single {@link AtomicLong} holding the theoretical arrival
+ * time of its next request in {@link System#nanoTime()} units, advanced by
+ * one compare-and-set per admitted request. A request checked against
+ * several levels advances each key in turn and moves the ones already
+ * advanced back if a later level denies it; the denial reports the longest
+ * wait of every short level, as the Redis script does.
+ */
+@Component
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "memory-gcra")
+public class InMemoryGcraRateLimiterBackend implements RateLimiterBackend {
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+    // A token's interval is at most a second, so a burst tolerance (and a cost,
+    // which never exceeds it) stays below 2^61 nanos and arrival times cannot overflow
+    private static final long MAX_CAPACITY = Integer.MAX_VALUE;
+
+    private final ConcurrentHashMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private Disposable sweeper;
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        if (cost > policy.capacity()) {
+            return Mono.just(RateLimitDecision.oversized(policy.capacity()));
+        }
+        return Mono.just(advance(key, policy, cost, true));
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        for (RateLimitLevel level : levels) {
+            if (cost > level.policy().capacity()) {
+                return Mono.just(RateLimitDecision.oversized(level.policy().capacity()));
+            }
+        }
+        RateLimitDecision decision = null;
+        for (int i = 0; i < levels.size(); i++) {
+            RateLimitDecision level = advance(levels.get(i).key(), levels.get(i).policy(), cost, true);
+            if (!level.allowed()) {
+                for (int j = 0; j < i; j++) {
+                    retreat(levels.get(j).key(), levels.get(j).policy(), cost);
+                }
+                return Mono.just(deniedAll(levels, cost));
+            }
+            decision = decision == null ? level : decision.tighter(level);
+        }
+        return Mono.just(decision);
+    }
+
+    @Override
+    public long maxCapacity() {
+        return MAX_CAPACITY;
+    }
+
+    /**
+     * Denial of a request checked against several levels, reported as the
+     * Redis script does: the longest wait of any short level, and the
+     * requests left and reset of the level closest to running out.
+     */
+    private RateLimitDecision deniedAll(List<RateLimitLevel> levels, long cost) {
+        long retryAfter = 0;
+        RateLimitDecision tightest = null;
+        for (RateLimitLevel level : levels) {
+            RateLimitDecision request = advance(level.key(), level.policy(), cost, false);
+            if (!request.allowed()) {
+                retryAfter = Math.max(retryAfter, request.retryAfterMillis());
+            }
+            RateLimitDecision state = advance(level.key(), level.policy(), 0, false);
+            tightest = tightest == null ? state : tightest.tighter(state);
+        }
+        return RateLimitDecision.denied(tightest.limit(), tightest.remaining(), retryAfter, tightest.resetMillis());
+    }
+
+    /**
+     * Decide {@code cost} requests against the key, moving its arrival time
+     * on if they are allowed and {@code take} is set.
+     */
+    private RateLimitDecision advance(String key, RateLimitPolicy policy, long cost, boolean take) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / policy.refillRate();
+        long tolerance = interval * policy.capacity();
+        AtomicLong arrival = arrivals.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+
+        while (true) {
+            long now = System.nanoTime();
+            long stored = arrival.get();
+            long tat = now - stored > 0 ? now : stored;
+            long newTat = tat + interval * cost;
+            long allowAt = newTat - tolerance;
+
+            if (now - allowAt < 0) {
+                return RateLimitDecision.denied(policy.capacity(), Math.max(0, (tolerance - (tat - now)) / interval),
+                        ceilMillis(allowAt - now), ceilMillis(tat - now));
+            }
+            if (!take || arrival.compareAndSet(stored, newTat)) {
+                return RateLimitDecision.allowed(policy.capacity(), (tolerance - (newTat - now)) / interval,
+                        ceilMillis(newTat - now));
+            }
+        }
+    }
+
+    private static long ceilMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos + 999_999);
+    }
+
+    /**
+     * Undo an {@link #advance}. Arrival times in the past all read as now, so
+     * moving one back too far is harmless.
+     */
+    private void retreat(String key, RateLimitPolicy policy, long cost) {
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival == null) {
+            return;
+        }
+        long interval = TimeUnit.SECONDS.toNanos(1) / policy.refillRate();
+        arrival.getAndUpdate(tat -> tat - interval * cost);
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / policy.refillRate();
+        AtomicLong arrival = arrivals.get(key);
+        if (arrival == null) {
+            return Mono.just(policy.capacity());
+        }
+        long backlog = Math.max(0, arrival.get() - System.nanoTime());
+        return Mono.just(Math.max(0, policy.capacity() - (backlog + interval - 1) / interval));
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper = Schedulers.parallel().schedulePeriodically(
+                this::evictIdleKeys, SWEEP_INTERVAL.toMillis(), SWEEP_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    /**
+     * Keys whose arrival time has passed have their full burst again and
+     * behave exactly like unseen keys, so they can be dropped.
+     */
+    private void evictIdleKeys() {
+        long now = System.nanoTime();
+        arrivals.values().removeIf(arrival -> now - arrival.get() > 0);
+    }
+}
@@ -0,0 +1,261 @@
+package com.gateway.ratelimit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets kept in gateway memory, for single-node deployments and local
+ * development where no Redis is available.
+ *
+ * Each bucket is one {@link AtomicLong} packing the last refill time (upper
+ * 40 bits, millis since this backend started) and the fill level (lower 24
+ * bits, as a fraction of capacity). Refills count the whole fill units earned
+ * on an absolute time line, so the fraction of a unit earned by one refill is
+ * not lost however often the bucket is touched. Storing the fill level rather than a token
+ * count means a policy reload rescales existing buckets to the new capacity
+ * with no extra state. That caps capacity at 65535 tokens,
+ * which policies are checked against when they are loaded. A decision is a read, some arithmetic and a
+ * compare-and-set, with no locks; once the bucket exists the only allocation
+ * is the decision handed back.
+ * Buckets live in a {@link ConcurrentHashMap}, whose lookups never lock and
+ * whose inserts only contend within a single bin.
+ *
+ * A request checked against several levels takes its cost from each bucket in
+ * turn and, if one is short, hands it back to those already charged. Other
+ * requests can briefly see the taken tokens, but none are lost. The denial
+ * then reports the longest wait of every short level, as the Redis script
+ * does, not just of the first one found.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "memory")
+public class InMemoryRateLimiterBackend implements RateLimiterBackend {
+
+    private static final int FILL_BITS = 24;
+    private static final long FULL = (1L << FILL_BITS) - 1; // Fill level of a full bucket
+    private static final long MAX_CAPACITY = FULL >> 8; // At least 256 fill units per token
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime();
+    private volatile long maxTtlMillis;
+    private Disposable sweeper;
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        if (cost > policy.capacity()) {
+            return Mono.just(RateLimitDecision.oversized(policy.capacity()));
+        }
+        long result = consume(key, policy, cost);
+        if (result >= 0) {
+            return Mono.just(allowed(policy, result));
+        }
+        return Mono.just(denied(policy, cost, -result));
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        for (RateLimitLevel level : levels) {
+            if (cost > level.policy().capacity()) {
+                return Mono.just(RateLimitDecision.oversized(level.policy().capacity()));
+            }
+        }
+        RateLimitDecision decision = null;
+        for (int i = 0; i < levels.size(); i++) {
+            RateLimitPolicy policy = levels.get(i).policy();
+            long result = consume(levels.get(i).key(), policy, cost);
+            if (result < 0) {
+                for (int j = 0; j < i; j++) {
+                    refund(levels.get(j).key(), levels.get(j).policy(), cost);
+                }
+                return Mono.just(deniedAll(levels, cost));
+            }
+            RateLimitDecision level = allowed(policy, result);
+            decision = decision == null ? level : decision.tighter(level);
+        }
+        return Mono.just(decision);
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return Mono.just(consume(key, policy, 0) * policy.capacity() / FULL);
+    }
+
+    @Override
+    public long maxCapacity() {
+        return MAX_CAPACITY;
+    }
+
+    /**
+     * Refill the bucket and take {@code cost} tokens from it.
+     *
+     * @return remaining fill level, or minus the fill units still missing if
+     * the bucket had too few tokens
+     */
+    private long consume(String key, RateLimitPolicy policy, long cost) {
+        long now = nowMillis();
+        long capacity = policy.capacity();
+        // Compared against fill * capacity to avoid rounding a token's worth of fill;
+        // cost is at most capacity, so this stays below 2^40
+        long required = cost * FULL;
+        long costUnits = required / capacity;
+        AtomicLong bucket = bucket(key, policy, now);
+
+        while (true) {
+            long state = bucket.get();
+            long refilled = refill(state, now, policy);
+            long fill = refilled & FULL;
+            if (fill * capacity < required) {
+                return -((required - fill * capacity + capacity - 1) / capacity);
+            }
+            long remaining = fill - costUnits;
+            if (bucket.compareAndSet(state, pack(remaining, refilled >>> FILL_BITS))) {
+                return remaining;
+            }
+        }
+    }
+
+    /**
+     * Give back tokens taken by {@link #consume}, keeping the refill time.
+     */
+    private void refund(String key, RateLimitPolicy policy, long cost) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+        long costUnits = cost * FULL / policy.capacity();
+        bucket.getAndUpdate(state -> pack(Math.min(FULL, (state & FULL) + costUnits), state >>> FILL_BITS));
+    }
+
+    /**
+     * Denial of a request checked against several levels, reported as the
+     * Redis script does: the longest wait of any short level, and the tokens
+     * and reset of the level closest to running out.
+     */
+    private RateLimitDecision deniedAll(List<RateLimitLevel> levels, long cost) {
+        long retryAfter = 0;
+        RateLimitDecision tightest = null;
+        for (RateLimitLevel level : levels) {
+            RateLimitPolicy policy = level.policy();
+            long fill = consume(level.key(), policy, 0);
+            long shortfall = cost * FULL - fill * policy.capacity();
+            if (shortfall > 0) {
+                long missing = (shortfall + policy.capacity() - 1) / policy.capacity();
+                retryAfter = Math.max(retryAfter, millisFor(policy, missing));
+            }
+            RateLimitDecision state = allowed(policy, fill);
+            tightest = tightest == null ? state : tightest.tighter(state);
+        }
+        return RateLimitDecision.denied(tightest.limit(), tightest.remaining(), retryAfter, tightest.resetMillis());
+    }
+
+    private static RateLimitDecision allowed(RateLimitPolicy policy, long fill) {
+        return RateLimitDecision.allowed(policy.capacity(), fill * policy.capacity() / FULL,
+                millisFor(policy, FULL - fill));
+    }
+
+    private static RateLimitDecision denied(RateLimitPolicy policy, long cost, long missing) {
+        long fill = Math.max(0, cost * FULL / policy.capacity() - missing);
+        return RateLimitDecision.denied(policy.capacity(), fill * policy.capacity() / FULL,
+                millisFor(policy, missing), millisFor(policy, FULL - fill));
+    }
+
+    /**
+     * Millis to refill {@code units} of fill, at refillRate * FULL / capacity
+     * units per second.
+     */
+    private static long millisFor(RateLimitPolicy policy, long units) {
+        long perSecond = policy.refillRate() * FULL;
+        return (units * policy.capacity() * 1000 + perSecond - 1) / perSecond;
+    }
+
+    private AtomicLong bucket(String key, RateLimitPolicy policy, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+
+        if (policy.ttl().toMillis() > maxTtlMillis) {
+            maxTtlMillis = policy.ttl().toMillis();
+        }
+        // New bucket starts with full capacity
+        AtomicLong created = new AtomicLong(pack(FULL, now));
+        AtomicLong existing = buckets.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Bucket state refilled up to {@code now}.
+     *
+     * Units are counted as whole units earned on an absolute time line,
+     * {@code floor(t * rate)}, between the refill time and now, rather than as
+     * {@code floor(elapsed * rate)}; the fraction of a unit earned before the
+     * refill time is thereby carried into the next refill instead of being
+     * dropped, however often the bucket is touched.
+     */
+    private static long refill(long state, long now, RateLimitPolicy policy) {
+        long fill = state & FULL;
+        long last = state >>> FILL_BITS;
+        long elapsed = now - last;
+        if (elapsed <= 0) {
+            return state;
+        }
+        // Past this point the bucket is full anyway; also keeps the product below overflow
+        long fullAfter = 1000 * policy.capacity() / policy.refillRate() + 1;
+        if (elapsed >= fullAfter) {
+            return pack(FULL, now);
+        }
+        // Units per milli are perMilli / perUnit; carried is the unit fraction earned by last
+        long perMilli = policy.refillRate() * FULL;
+        long perUnit = 1000 * policy.capacity();
+        long carried = last % perUnit * (perMilli % perUnit) % perUnit;
+        long added = (carried + elapsed * perMilli) / perUnit;
+        return pack(Math.min(FULL, fill + added), now);
+    }
+
+    private static long pack(long fill, long millis) {
+        return (millis << FILL_BITS) | fill;
+    }
+
+    private long nowMillis() {
+        return (System.nanoTime() - origin) / 1_000_000;
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper = Schedulers.parallel().schedulePeriodically(
+                this::evictIdleBuckets, SWEEP_INTERVAL.toMillis(), SWEEP_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    /**
+     * Drop buckets untouched for longer than the bucket TTL, mirroring the
+     * key expiry of the Redis backend.
+     */
+    private void evictIdleBuckets() {
+        long cutoff = nowMillis() - maxTtlMillis;
+        int before = buckets.size();
+        buckets.entrySet().removeIf(entry -> (entry.getValue().get() >>> FILL_BITS) < cutoff);
+        log.debug("Evicted {} idle in-memory buckets", before - buckets.size());
+    }
+}
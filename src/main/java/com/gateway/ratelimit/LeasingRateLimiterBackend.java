@@ -0,0 +1,260 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Redis token buckets where each gateway node leases a chunk of tokens per key
+ * and spends them locally, so hot keys only reach Redis once per lease.
+ *
+ * Lease size follows the key's observed token demand on this node, capped by
+ * the bucket's refill over one lease period and by
+ * {@code rate-limit.leasing.max-tokens}, but always covers the callers
+ * waiting for it, so a burst on a new key is not refused while the bucket
+ * still has tokens. Tokens left when a lease expires are handed back to the
+ * bucket, either with the next lease request or by a periodic sweep for keys
+ * that went idle.
+ *
+ * Leased tokens are already taken from the shared bucket, but a node may spend
+ * them after the bucket has refilled, so the fleet can admit up to
+ * {@code max-tokens} extra requests per key and node over a window.
+ *
+ * Levels are spent one after another from their own leases; a request denied
+ * by a later level hands its cost back to the leases of the earlier ones. The
+ * denial reports the wait of that level, the first short one found.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "leasing")
+public class LeasingRateLimiterBackend implements RateLimiterBackend {
+
+    private final TokenBucketScript script;
+    private final long leaseNanos;
+    private final long maxLeaseTokens;
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private Disposable sweeper;
+
+    public LeasingRateLimiterBackend(TokenBucketScript script, RateLimitProperties properties) {
+        this.script = script;
+        this.leaseNanos = properties.getLeasing().getDuration().toNanos();
+        this.maxLeaseTokens = properties.getLeasing().getMaxTokens();
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        Lease lease = leases.computeIfAbsent(key, k -> new Lease());
+        lease.calls.addAndGet(cost);
+        if (lease.spend(System.nanoTime(), cost)) {
+            return Mono.just(lease.allowed(policy));
+        }
+        return acquire(key, policy, cost, lease);
+    }
+
+    /**
+     * Wait for a renewal and spend from it. If other callers emptied the
+     * lease first although the bucket granted all that was asked, the bucket
+     * still has tokens, so renew again rather than deny.
+     */
+    private Mono<RateLimitDecision> acquire(String key, RateLimitPolicy policy, long cost, Lease lease) {
+        lease.waiting.addAndGet(cost);
+        return renew(key, policy, cost, lease)
+                .doOnTerminate(() -> lease.waiting.addAndGet(-cost))
+                .doOnCancel(() -> lease.waiting.addAndGet(-cost))
+                .then(Mono.defer(() -> {
+                    if (lease.spend(System.nanoTime(), cost)) {
+                        return Mono.just(lease.allowed(policy));
+                    }
+                    if (lease.retryAfterMillis == 0) {
+                        return acquire(key, policy, cost, lease);
+                    }
+                    return Mono.just(RateLimitDecision.denied(policy.capacity(), lease.tokens.get(),
+                            lease.retryAfterMillis, lease.resetMillis()));
+                }));
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        return consumeFrom(levels, 0, cost, null);
+    }
+
+    private Mono<RateLimitDecision> consumeFrom(List<RateLimitLevel> levels, int index, long cost,
+                                                RateLimitDecision tightest) {
+        if (index == levels.size()) {
+            return Mono.just(tightest);
+        }
+        RateLimitLevel level = levels.get(index);
+        return tryConsume(level.key(), level.policy(), cost).flatMap(decision -> {
+            if (!decision.allowed()) {
+                for (int i = 0; i < index; i++) {
+                    Lease lease = leases.get(levels.get(i).key());
+                    if (lease != null) {
+                        lease.tokens.addAndGet(cost);
+                    }
+                }
+                return Mono.just(decision);
+            }
+            return consumeFrom(levels, index + 1, cost, tightest == null ? decision : tightest.tighter(decision));
+        });
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return script.execute(key, policy, 0, 0, 0).map(result -> result.get(1));
+    }
+
+    /**
+     * Lease more tokens for the key, at least {@code cost}. Concurrent callers
+     * share one Redis call.
+     */
+    private Mono<Void> renew(String key, RateLimitPolicy policy, long cost, Lease lease) {
+        Mono<Void> pending = lease.renewal.get();
+        if (pending != null) {
+            return pending;
+        }
+
+        // Cleared before waiters are told, so one renewing again starts a new call
+        Mono<Void> created = Mono.defer(() -> fetch(key, policy, cost, lease))
+                .doOnTerminate(() -> lease.renewal.set(null))
+                .cache();
+        if (lease.renewal.compareAndSet(null, created)) {
+            return created;
+        }
+        pending = lease.renewal.get();
+        return pending != null ? pending : created;
+    }
+
+    private Mono<Void> fetch(String key, RateLimitPolicy policy, long cost, Lease lease) {
+        long now = System.nanoTime();
+        // Enough for everyone already waiting, so a burst of new callers is served in one call
+        long demand = Math.min(lease.waiting.get(), policy.capacity());
+        long size = Math.max(cost, Math.max(demand, leaseSize(policy, lease, now)));
+        // Tokens left from an expired lease go back in the same call
+        long leftover = lease.expired(now) ? lease.tokens.getAndSet(0) : 0;
+
+        return script.execute(key, policy, size, cost, leftover)
+                .doOnNext(result -> {
+                    lease.policy = policy;
+                    lease.startedAt = now;
+                    // From when the tokens arrive, so a slow reply still leaves a lease to spend
+                    lease.expiresAt = System.nanoTime() + leaseNanos;
+                    lease.retryAfterMillis = result.get(2);
+                    lease.bucketRemaining = result.get(1);
+                    lease.resetAt = now + TimeUnit.MILLISECONDS.toNanos(result.get(3));
+                    lease.tokens.addAndGet(result.get(0));
+                    log.debug("Leased {} of {} tokens for key: {}", result.get(0), size, key);
+                })
+                .doOnError(e -> lease.tokens.addAndGet(leftover))
+                .then();
+    }
+
+    /**
+     * Size the next lease from the rate this node has seen for the key.
+     */
+    private long leaseSize(RateLimitPolicy policy, Lease lease, long now) {
+        long spent = lease.calls.getAndSet(0);
+        long elapsed = now - lease.startedAt;
+        if (lease.policy != null && elapsed > 0) {
+            double observed = spent * 1e9 / elapsed;
+            lease.rate = lease.rate == 0 ? observed : (lease.rate + observed) / 2;
+        }
+
+        double leaseSeconds = leaseNanos / 1e9;
+        long refillShare = Math.max(1, (long) (policy.refillRate() * leaseSeconds));
+        long wanted = (long) Math.ceil(lease.rate * leaseSeconds);
+        return Math.max(1, Math.min(wanted, Math.min(refillShare, maxLeaseTokens)));
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        long interval = TimeUnit.NANOSECONDS.toMillis(leaseNanos);
+        sweeper = Schedulers.parallel().schedulePeriodically(
+                this::returnIdleLeases, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    /**
+     * Hand back tokens of leases that expired a full lease period ago and
+     * forget those keys.
+     */
+    private void returnIdleLeases() {
+        long now = System.nanoTime();
+        leases.forEach((key, lease) -> {
+            if (now - lease.expiresAt < leaseNanos || lease.renewal.get() != null) {
+                return;
+            }
+            leases.remove(key, lease);
+            long leftover = lease.tokens.getAndSet(0);
+            if (leftover > 0 && lease.policy != null) {
+                script.execute(key, lease.policy, 0, 0, leftover)
+                        .subscribe(result -> { },
+                                e -> log.warn("Failed to return {} leased tokens for key: {}", leftover, key, e));
+            }
+        });
+    }
+
+    /**
+     * Tokens this node holds for one key.
+     */
+    private static final class Lease {
+        final AtomicLong tokens = new AtomicLong();
+        final AtomicLong calls = new AtomicLong(); // Tokens asked for since the last lease
+        final AtomicLong waiting = new AtomicLong(); // Tokens wanted by callers waiting on a renewal
+        final AtomicReference<Mono<Void>> renewal = new AtomicReference<>();
+        volatile RateLimitPolicy policy;
+        volatile long startedAt;
+        volatile long expiresAt;
+        volatile double rate; // Observed tokens per second
+        volatile long retryAfterMillis; // From the last lease that came back empty
+        volatile long bucketRemaining; // Shared bucket tokens after the last lease
+        volatile long resetAt; // When the shared bucket was due to be full, as of the last lease
+
+        /**
+         * Remaining tokens and reset as of the last lease, so they are hints
+         * rather than exact.
+         */
+        RateLimitDecision allowed(RateLimitPolicy policy) {
+            return RateLimitDecision.allowed(policy.capacity(), tokens.get() + bucketRemaining, resetMillis());
+        }
+
+        long resetMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(resetAt - System.nanoTime()));
+        }
+
+        boolean expired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        boolean spend(long now, long cost) {
+            if (expired(now)) {
+                return false;
+            }
+            long available;
+            do {
+                available = tokens.get();
+                if (available < cost) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(available, available - cost));
+            return true;
+        }
+    }
+}
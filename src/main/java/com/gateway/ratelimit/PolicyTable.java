@@ -0,0 +1,296 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable lookup of the {@link RateLimitPolicy} for a route and client.
+ *
+ * Configuration is resolved once into one policy array per route, indexed by
+ * tier, so finding the policy for a request is a route lookup, a client tier
+ * lookup and an array read. Index 0 holds the policy for clients without a
+ * tier.
+ *
+ * For a route and tier the most specific setting wins: the route's own tier
+ * entry, then the global tier entry, then the route entry, then the default
+ * policy. Fields left out of an entry are inherited the same way.
+ *
+ * Besides the client's own bucket a request can be checked against an API
+ * key bucket, a route-wide ceiling and a gateway-wide ceiling; the table lists
+ * the levels that apply so they can be decided together. Only issued API keys
+ * get a bucket, so clients cannot mint buckets by sending made-up keys.
+ *
+ * Request costs are compiled per route into an ordered rule array; the first
+ * rule matching the method and path decides how many tokens a request takes.
+ *
+ * Each route also names the key resolvers its client buckets are keyed by.
+ */
+public final class PolicyTable {
+
+    private static final int NO_TIER = 0;
+
+    // Bucket keys of the shared levels; route ids and API keys follow the prefix
+    private static final String API_KEY_PREFIX = "@api-key:";
+    private static final String ROUTE_PREFIX = "@route:";
+    private static final String GLOBAL_KEY = "@global";
+
+    private final Map<String, RateLimitPolicy[]> routes;
+    private final RateLimitPolicy[] fallback;
+    private final Map<String, Integer> clientTiers;
+    private final Map<String, CostRule[]> costs;
+    private final Map<String, RateLimitLevel> ceilings;
+    private final RateLimitPolicy apiKeyPolicy;
+    private final Set<String> apiKeys;
+    private final RateLimitLevel global;
+    private final Map<String, List<String>> keys;
+    private final List<String> defaultKey;
+    private final long maxCapacity;
+
+    private PolicyTable(Map<String, RateLimitPolicy[]> routes, RateLimitPolicy[] fallback,
+                        Map<String, Integer> clientTiers, Map<String, CostRule[]> costs,
+                        Map<String, RateLimitLevel> ceilings, RateLimitPolicy apiKeyPolicy, Set<String> apiKeys,
+                        RateLimitLevel global, Map<String, List<String>> keys, List<String> defaultKey) {
+        this.routes = routes;
+        this.fallback = fallback;
+        this.clientTiers = clientTiers;
+        this.costs = costs;
+        this.ceilings = ceilings;
+        this.apiKeyPolicy = apiKeyPolicy;
+        this.apiKeys = apiKeys;
+        this.global = global;
+        this.keys = keys;
+        this.defaultKey = defaultKey;
+        this.maxCapacity = maxCapacity(routes, fallback, ceilings, apiKeyPolicy, global);
+    }
+
+    /**
+     * Policy for a client on a route. Unknown routes and clients get the
+     * defaults.
+     */
+    public RateLimitPolicy resolve(String routeId, String clientKey) {
+        RateLimitPolicy[] byTier = routeId != null ? routes.getOrDefault(routeId, fallback) : fallback;
+        Integer tier = clientKey != null ? clientTiers.get(clientKey) : null;
+        return byTier[tier != null ? tier : NO_TIER];
+    }
+
+    /**
+     * Buckets a request must have tokens in, client bucket first.
+     *
+     * @param apiKey the client's API key, or null if it sent none; keys not
+     *               issued get no bucket of their own
+     */
+    public List<RateLimitLevel> levels(String routeId, String clientKey, String apiKey) {
+        List<RateLimitLevel> levels = new ArrayList<>(4);
+        levels.add(new RateLimitLevel(TokenBucketRateLimiter.bucketKey(routeId, clientKey),
+                resolve(routeId, clientKey)));
+        if (apiKeyPolicy != null && isIssuedApiKey(apiKey)) {
+            levels.add(new RateLimitLevel(API_KEY_PREFIX + apiKey, apiKeyPolicy));
+        }
+        RateLimitLevel ceiling = routeId != null ? ceilings.get(routeId) : null;
+        if (ceiling != null) {
+            levels.add(ceiling);
+        }
+        if (global != null) {
+            levels.add(global);
+        }
+        return levels;
+    }
+
+    /**
+     * Whether the key is one of the configured API keys.
+     */
+    public boolean isIssuedApiKey(String apiKey) {
+        return apiKey != null && apiKeys.contains(apiKey);
+    }
+
+    /**
+     * Tokens a request on a route costs; one unless a cost rule matches.
+     */
+    public long cost(String routeId, ServerHttpRequest request) {
+        CostRule[] rules = routeId != null ? costs.get(routeId) : null;
+        if (rules == null) {
+            return 1;
+        }
+        for (CostRule rule : rules) {
+            if (rule.matches(request)) {
+                return rule.cost(request);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Largest capacity of any policy in the table.
+     */
+    public long maxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Key resolver names for client buckets on a route.
+     */
+    public List<String> key(String routeId) {
+        return routeId != null ? keys.getOrDefault(routeId, defaultKey) : defaultKey;
+    }
+
+    /**
+     * Whether any route keys its clients with the named resolver.
+     */
+    public boolean usesKeyResolver(String name) {
+        return defaultKey.contains(name) || keys.values().stream().anyMatch(key -> key.contains(name));
+    }
+
+    public static PolicyTable compile(RateLimitProperties properties) {
+        RateLimitPolicy base = toPolicy(properties.getDefaultPolicy(), null);
+
+        // Every tier name mentioned anywhere gets an index
+        TreeSet<String> tierNames = new TreeSet<>(properties.getTiers().keySet());
+        properties.getRoutes().values().forEach(route -> tierNames.addAll(route.getTiers().keySet()));
+        tierNames.addAll(properties.getClientTiers().values());
+        String[] tiers = new String[tierNames.size() + 1];
+        Map<String, Integer> tierIndex = new HashMap<>();
+        for (String name : tierNames) {
+            tierIndex.put(name, tierIndex.size() + 1);
+            tiers[tierIndex.size()] = name;
+        }
+
+        RateLimitPolicy[] fallback = byTier(base, Map.of(), properties.getTiers(), tiers);
+        Map<String, RateLimitPolicy[]> routes = new HashMap<>();
+        properties.getRoutes().forEach((routeId, route) ->
+                routes.put(routeId, byTier(toPolicy(route, base), route.getTiers(), properties.getTiers(), tiers)));
+
+        Map<String, Integer> clientTiers = new HashMap<>();
+        properties.getClientTiers().forEach((client, tier) -> clientTiers.put(client, tierIndex.get(tier)));
+
+        Map<String, CostRule[]> costs = new HashMap<>();
+        properties.getRoutes().forEach((routeId, route) -> {
+            if (!route.getCosts().isEmpty()) {
+                costs.put(routeId, route.getCosts().stream().map(CostRule::compile).toArray(CostRule[]::new));
+            }
+        });
+
+        Map<String, RateLimitLevel> ceilings = new HashMap<>();
+        properties.getRoutes().forEach((routeId, route) -> {
+            if (route.getCeiling() != null) {
+                ceilings.put(routeId, new RateLimitLevel(ROUTE_PREFIX + routeId, toPolicy(route.getCeiling(), base)));
+            }
+        });
+        RateLimitPolicy apiKeyPolicy = properties.getApiKeyPolicy() != null
+                ? toPolicy(properties.getApiKeyPolicy(), base) : null;
+        RateLimitLevel global = properties.getGlobal() != null
+                ? new RateLimitLevel(GLOBAL_KEY, toPolicy(properties.getGlobal(), base)) : null;
+
+        List<String> defaultKey = keyNames(properties.getKey());
+        Map<String, List<String>> keys = new HashMap<>();
+        properties.getRoutes().forEach((routeId, route) -> {
+            if (route.getKey() != null) {
+                keys.put(routeId, keyNames(route.getKey()));
+            }
+        });
+
+        return new PolicyTable(Map.copyOf(routes), fallback, Map.copyOf(clientTiers), Map.copyOf(costs),
+                Map.copyOf(ceilings), apiKeyPolicy, Set.copyOf(properties.getApiKeys()), global,
+                Map.copyOf(keys), defaultKey);
+    }
+
+    private static long maxCapacity(Map<String, RateLimitPolicy[]> routes, RateLimitPolicy[] fallback,
+                                    Map<String, RateLimitLevel> ceilings, RateLimitPolicy apiKeyPolicy,
+                                    RateLimitLevel global) {
+        long max = 0;
+        for (RateLimitPolicy policy : fallback) {
+            max = Math.max(max, policy.capacity());
+        }
+        for (RateLimitPolicy[] byTier : routes.values()) {
+            for (RateLimitPolicy policy : byTier) {
+                max = Math.max(max, policy.capacity());
+            }
+        }
+        for (RateLimitLevel ceiling : ceilings.values()) {
+            max = Math.max(max, ceiling.policy().capacity());
+        }
+        if (apiKeyPolicy != null) {
+            max = Math.max(max, apiKeyPolicy.capacity());
+        }
+        if (global != null) {
+            max = Math.max(max, global.policy().capacity());
+        }
+        return max;
+    }
+
+    private static List<String> keyNames(List<String> names) {
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("Rate limit key must name at least one resolver");
+        }
+        return names.stream().map(String::trim).toList();
+    }
+
+    private static RateLimitPolicy[] byTier(RateLimitPolicy routePolicy,
+                                            Map<String, RateLimitProperties.Policy> routeTiers,
+                                            Map<String, RateLimitProperties.Policy> globalTiers,
+                                            String[] tiers) {
+        RateLimitPolicy[] policies = new RateLimitPolicy[tiers.length];
+        policies[NO_TIER] = routePolicy;
+        for (int i = 1; i < tiers.length; i++) {
+            RateLimitProperties.Policy override = routeTiers.getOrDefault(tiers[i], globalTiers.get(tiers[i]));
+            policies[i] = override != null ? toPolicy(override, routePolicy) : routePolicy;
+        }
+        return policies;
+    }
+
+    private static RateLimitPolicy toPolicy(RateLimitProperties.Policy config, RateLimitPolicy parent) {
+        return new RateLimitPolicy(
+                config.getCapacity() != null ? config.getCapacity() : parent.capacity(),
+                config.getRefillRate() != null ? config.getRefillRate() : parent.refillRate(),
+                config.getTtl() != null ? config.getTtl() : parent.ttl(),
+                config.getMaxDelay() != null ? config.getMaxDelay() : parent.maxDelay(),
+                config.getMaxQueued() != null ? config.getMaxQueued() : parent.maxQueued());
+    }
+
+    /**
+     * A compiled cost rule; a null method or path matches anything and a
+     * zero {@code bytesPerToken} ignores the body size.
+     */
+    private record CostRule(HttpMethod method, PathPattern path, long cost, long bytesPerToken) {
+
+        static CostRule compile(RateLimitProperties.CostRule config) {
+            // The Redis script grants nothing for a zero cost and so would deny it
+            if (config.getCost() < 1) {
+                throw new IllegalArgumentException("Request cost must be at least 1: " + config.getCost());
+            }
+            long bytesPerToken = config.getPerContentLength() != null ? config.getPerContentLength().toBytes() : 0;
+            if (bytesPerToken < 0) {
+                throw new IllegalArgumentException("per-content-length must be positive: " + config.getPerContentLength());
+            }
+            return new CostRule(
+                    config.getMethod() != null ? HttpMethod.valueOf(config.getMethod().toUpperCase()) : null,
+                    config.getPath() != null ? PathPatternParser.defaultInstance.parse(config.getPath()) : null,
+                    config.getCost(),
+                    bytesPerToken);
+        }
+
+        boolean matches(ServerHttpRequest request) {
+            return (method == null || method.equals(request.getMethod()))
+                    && (path == null || path.matches(request.getPath().pathWithinApplication()));
+        }
+
+        long cost(ServerHttpRequest request) {
+            long length = request.getHeaders().getContentLength();
+            if (bytesPerToken == 0 || length <= 0) {
+                return cost;
+            }
+            // Content-Length is the client's to choose, so neither step may overflow
+            long bodyTokens = length / bytesPerToken + (length % bytesPerToken == 0 ? 0 : 1);
+            return bodyTokens > Long.MAX_VALUE - cost ? Long.MAX_VALUE : cost + bodyTokens;
+        }
+    }
+}
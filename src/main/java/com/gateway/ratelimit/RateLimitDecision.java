@@ -0,0 +1,69 @@
+package com.gateway.ratelimit;
+
+import java.util.List;
+
+/**
+ * Outcome of a single rate limit check.
+ *
+ * With several levels checked at once, the limit, remaining tokens and reset
+ * describe the level closest to running out.
+ *
+ * @param allowed          whether the request may proceed
+ * @param limit            capacity of the bucket
+ * @param remaining        whole tokens left after the decision
+ * @param retryAfterMillis when denied, how long until enough tokens are available,
+ *                         or {@link #NEVER} if the request costs more than the
+ *                         bucket can hold
+ * @param resetMillis      how long until the bucket is full again
+ */
+public record RateLimitDecision(boolean allowed, long limit, long remaining, long retryAfterMillis,
+                                long resetMillis) {
+
+    /**
+     * Retry-after of a request no amount of waiting would let through.
+     */
+    public static final long NEVER = -1;
+
+    public static RateLimitDecision allowed(long limit, long remaining, long resetMillis) {
+        return new RateLimitDecision(true, limit, remaining, 0, resetMillis);
+    }
+
+    public static RateLimitDecision denied(long limit, long remaining, long retryAfterMillis, long resetMillis) {
+        return new RateLimitDecision(false, limit, remaining, retryAfterMillis, Math.max(resetMillis, retryAfterMillis));
+    }
+
+    /**
+     * Denial of a request costing more than the bucket's capacity.
+     */
+    public static RateLimitDecision oversized(long limit) {
+        return new RateLimitDecision(false, limit, 0, NEVER, 0);
+    }
+
+    /**
+     * Whether a denied request could be let through later.
+     */
+    public boolean retryable() {
+        return retryAfterMillis != NEVER;
+    }
+
+    /**
+     * Decision from a script result laid out as {allowed or granted,
+     * remaining, retry after, reset}, starting at {@code offset}.
+     */
+    static RateLimitDecision fromScript(List<Long> result, int offset, long limit) {
+        return result.get(offset) > 0
+                ? allowed(limit, result.get(offset + 1), result.get(offset + 3))
+                : denied(limit, result.get(offset + 1), result.get(offset + 2), result.get(offset + 3));
+    }
+
+    /**
+     * Whichever of two allowed decisions leaves fewer tokens, for reporting
+     * the binding level.
+     */
+    RateLimitDecision tighter(RateLimitDecision other) {
+        if (other.remaining < remaining || (other.remaining == remaining && other.resetMillis > resetMillis)) {
+            return other;
+        }
+        return this;
+    }
+}
@@ -0,0 +1,11 @@
+package com.gateway.ratelimit;
+
+/**
+ * One of the buckets a request is checked against, e.g. the client's own
+ * bucket or a route-wide ceiling.
+ *
+ * @param key    bucket key
+ * @param policy limits of the bucket
+ */
+public record RateLimitLevel(String key, RateLimitPolicy policy) {
+}
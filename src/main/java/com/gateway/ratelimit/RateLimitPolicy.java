@@ -0,0 +1,32 @@
+package com.gateway.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * Limits applied to a single token bucket.
+ *
+ * @param capacity   maximum number of tokens (burst size)
+ * @param refillRate tokens added per second
+ * @param ttl        how long an idle bucket is kept before it is dropped
+ * @param maxDelay   how long a limited request may be held waiting for tokens
+ *                   instead of being rejected; zero rejects at once
+ * @param maxQueued  most requests held waiting per bucket on one node
+ */
+public record RateLimitPolicy(long capacity, long refillRate, Duration ttl, Duration maxDelay, int maxQueued) {
+
+    public RateLimitPolicy {
+        if (capacity <= 0 || refillRate <= 0) {
+            throw new IllegalArgumentException("capacity and refillRate must be positive");
+        }
+        if (maxDelay.isNegative() || maxQueued < 0) {
+            throw new IllegalArgumentException("maxDelay and maxQueued must not be negative");
+        }
+    }
+
+    /**
+     * Whether limited requests wait for tokens rather than being rejected.
+     */
+    public boolean shaping() {
+        return !maxDelay.isZero() && maxQueued > 0;
+    }
+}
@@ -0,0 +1,227 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.filter.JwtVerifier;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.BindHandler;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.handler.NoUnboundElementsBindHandler;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the compiled {@link PolicyTable} built from {@link RateLimitProperties}.
+ *
+ * Policies can be replaced at runtime, either through the admin endpoint or by
+ * editing the file named by {@code rate-limit.policy-file}, which is polled for
+ * changes. Both take a YAML document with a {@code rate-limit} section, bound
+ * like application.yml with the same relaxed names; unknown keys and a missing
+ * section are errors, so a typo or a half-written file never falls back to
+ * defaults. A reload compiles a complete new table and swaps it in with a
+ * single volatile write, so request threads never lock and never see a
+ * half-applied change. Bucket state is untouched; backends rescale buckets to
+ * the new capacity on their next use. Policies keyed by {@code jwt-sub} are
+ * refused, at startup too, unless a JWT key is configured.
+ *
+ * With {@code rate-limit.policy-channel} set, documents sent to the admin
+ * endpoint are published on that Redis channel and every node reloads from
+ * it, so the whole fleet changes together.
+ */
+@Slf4j
+@Component
+public class RateLimitPolicyRegistry {
+
+    private static final String SECTION = "rate-limit";
+
+    private final RateLimitProperties properties;
+    private final RateLimiterBackend backend;
+    private final JwtVerifier jwtVerifier;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private volatile PolicyTable table;
+    private long policyFileModified;
+    private Disposable watcher;
+    private Disposable subscription;
+
+    public RateLimitPolicyRegistry(RateLimitProperties properties, RateLimiterBackend backend,
+                                   JwtVerifier jwtVerifier, ReactiveRedisTemplate<String, String> redisTemplate) {
+        this.properties = properties;
+        this.backend = backend;
+        this.jwtVerifier = jwtVerifier;
+        this.redisTemplate = redisTemplate;
+        this.table = compile(properties);
+    }
+
+    /**
+     * Policy for a client on a route.
+     */
+    public RateLimitPolicy resolve(String routeId, String clientKey) {
+        return table.resolve(routeId, clientKey);
+    }
+
+    /**
+     * Buckets a request must have tokens in, client bucket first.
+     */
+    public List<RateLimitLevel> levels(String routeId, String clientKey, String apiKey) {
+        return table.levels(routeId, clientKey, apiKey);
+    }
+
+    /**
+     * Whether the key is one of the configured API keys.
+     */
+    public boolean isIssuedApiKey(String apiKey) {
+        return table.isIssuedApiKey(apiKey);
+    }
+
+    /**
+     * Key resolver names for client buckets on a route.
+     */
+    public List<String> key(String routeId) {
+        return table.key(routeId);
+    }
+
+    /**
+     * Tokens a request on a route costs.
+     */
+    public long cost(String routeId, ServerHttpRequest request) {
+        return table.cost(routeId, request);
+    }
+
+    /**
+     * Replace all policies. Only the policy settings of {@code updated} are
+     * used; backend, leasing and JWT settings need a restart.
+     *
+     * @throws IllegalArgumentException if a policy is invalid; the current
+     *                                  policies stay in place
+     */
+    public void reload(RateLimitProperties updated) {
+        table = compile(updated);
+        log.info("Reloaded rate limit policies for routes: {}", updated.getRoutes().keySet());
+    }
+
+    /**
+     * Replace all policies from a YAML document with a {@code rate-limit}
+     * section, on every node if a policy channel is configured.
+     *
+     * @return whether the document was published to other nodes rather than
+     * only applied here
+     * @throws IllegalArgumentException if the document is invalid; the
+     *                                  current policies stay in place
+     */
+    public Mono<Boolean> reload(String document) {
+        RateLimitProperties updated = parse(new ByteArrayResource(document.getBytes(StandardCharsets.UTF_8)));
+        // Compile here too, so an invalid document is refused before other nodes see it
+        compile(updated);
+        if (properties.getPolicyChannel() == null) {
+            reload(updated);
+            return Mono.just(false);
+        }
+        return redisTemplate.convertAndSend(properties.getPolicyChannel(), document).thenReturn(true);
+    }
+
+    private PolicyTable compile(RateLimitProperties config) {
+        PolicyTable compiled = PolicyTable.compile(config);
+        if (compiled.maxCapacity() > backend.maxCapacity()) {
+            throw new IllegalArgumentException("Policy capacity " + compiled.maxCapacity()
+                    + " exceeds the " + backend.maxCapacity() + " tokens the " + properties.getBackend()
+                    + " backend holds per bucket");
+        }
+        // Unverified subjects could be forged to mint buckets or borrow tiers
+        if (compiled.usesKeyResolver("jwt-sub") && !jwtVerifier.isConfigured()) {
+            throw new IllegalArgumentException(
+                    "jwt-sub rate limit keys need rate-limit.jwt.secret or rate-limit.jwt.public-key");
+        }
+        return compiled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (properties.getPolicyFile() != null) {
+            long interval = properties.getPolicyFilePollInterval().toMillis();
+            // File reads block, so they stay off the parallel scheduler
+            watcher = Schedulers.boundedElastic().schedulePeriodically(
+                    this::reloadIfChanged, 0, interval, TimeUnit.MILLISECONDS);
+        }
+        if (properties.getPolicyChannel() != null) {
+            subscription = redisTemplate.listenToChannel(properties.getPolicyChannel())
+                    .doOnError(e -> log.warn("Lost rate limit policy channel, resubscribing", e))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                    .subscribe(message -> reloadPublished(message.getMessage()));
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void reloadPublished(String document) {
+        try {
+            reload(parse(new ByteArrayResource(document.getBytes(StandardCharsets.UTF_8))));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid published rate limit policies; keeping the current ones", e);
+        }
+    }
+
+    private void reloadIfChanged() {
+        File file = new File(properties.getPolicyFile());
+        long modified = file.lastModified();
+        if (modified == 0 || modified == policyFileModified) {
+            return;
+        }
+        policyFileModified = modified;
+
+        try {
+            reload(parse(new FileSystemResource(file)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid rate limit policy file {}; keeping the current policies", file, e);
+        }
+    }
+
+    /**
+     * Bind a YAML document laid out like the {@code rate-limit} section of
+     * application.yml, with the same relaxed names.
+     *
+     * @throws IllegalArgumentException if it cannot be read, has no
+     *                                  {@code rate-limit} section or has keys
+     *                                  that do not bind
+     */
+    static RateLimitProperties parse(Resource yaml) {
+        try {
+            var sources = new YamlPropertySourceLoader().load("rate-limit-policies", yaml);
+            return new Binder(ConfigurationPropertySources.from(sources))
+                    .bind(SECTION, Bindable.of(RateLimitProperties.class),
+                            new NoUnboundElementsBindHandler(BindHandler.DEFAULT))
+                    .orElseThrow(() -> new IllegalArgumentException("No " + SECTION + " section"));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable input, YAML syntax errors and bind failures
+            throw new IllegalArgumentException("Invalid rate limit policies: " + e.getMessage(), e);
+        }
+    }
+}
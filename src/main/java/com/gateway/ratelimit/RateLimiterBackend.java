@@ -0,0 +1,57 @@
+package com.gateway.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Limiting strategy and state store behind {@link TokenBucketRateLimiter}.
+ *
+ * Exactly one backend is active, chosen with the {@code rate-limit.backend}
+ * property. Most backends keep token buckets; others enforce the same
+ * {@link RateLimitPolicy} with a different algorithm, in which case "tokens"
+ * means requests still allowed.
+ */
+public interface RateLimiterBackend {
+
+    /**
+     * Refill the bucket for the given key and try to take {@code cost} tokens
+     * from it in one atomic step.
+     */
+    Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost);
+
+    /**
+     * Take {@code cost} tokens from the bucket of every level, or from none
+     * of them if any is short. A denial reports the longest wait of the short
+     * levels.
+     *
+     * This default checks the levels one after another, so it is only all or
+     * nothing for a single level, and stops at the first short level, so its
+     * denial reports that level's wait; backends that can decide several
+     * buckets in one atomic step override it.
+     */
+    default Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        Mono<RateLimitDecision> decision = null;
+        for (RateLimitLevel level : levels) {
+            Mono<RateLimitDecision> next = Mono.defer(() -> tryConsume(level.key(), level.policy(), cost));
+            decision = decision == null ? next : decision.flatMap(previous -> !previous.allowed()
+                    ? Mono.just(previous)
+                    : next.map(current -> current.allowed() ? previous.tighter(current) : current));
+        }
+        return decision;
+    }
+
+    /**
+     * Refill the bucket for the given key and report its tokens without
+     * consuming any.
+     */
+    Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy);
+
+    /**
+     * Largest bucket capacity this backend can hold; policies above it are
+     * rejected when they are loaded.
+     */
+    default long maxCapacity() {
+        return Long.MAX_VALUE;
+    }
+}
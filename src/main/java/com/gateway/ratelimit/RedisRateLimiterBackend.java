@@ -0,0 +1,147 @@
+package com.gateway.ratelimit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token buckets shared by all gateway nodes through Redis.
+ *
+ * Decisions for the same key are coalesced: while a script call for a key is
+ * in flight, further requests for that key wait and are then sent together
+ * in one call. When every waiter costs one token, the call asks for as many
+ * tokens as there are waiters and the first {@code granted} are admitted;
+ * otherwise the script takes each waiter's cost in turn. Either way a burst
+ * from one client costs one Redis call per round trip instead of one per
+ * request.
+ *
+ * Requests checked against several levels send all the levels' buckets in one
+ * all-or-nothing script call, bypassing the per-key coalescing.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "redis", matchIfMissing = true)
+public class RedisRateLimiterBackend implements RateLimiterBackend {
+
+    private final TokenBucketScript script;
+
+    // Keys with a script call in flight, and the requests queued behind it
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, cost);
+            boolean[] leader = {false};
+            inFlight.compute(key, (k, current) -> {
+                if (current == null) {
+                    leader[0] = true;
+                    return new InFlight(policy);
+                }
+                current.policy = policy;
+                current.waiting.add(waiter);
+                return current;
+            });
+            if (leader[0]) {
+                dispatch(key, policy, List.of(waiter));
+            }
+        });
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        if (levels.size() == 1) {
+            return tryConsume(levels.get(0).key(), levels.get(0).policy(), cost);
+        }
+        return script.executeAll(levels, cost)
+                .map(result -> RateLimitDecision.fromScript(result, 0, result.get(4)));
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return script.execute(key, policy, 0, 0, 0).map(result -> result.get(1));
+    }
+
+    /**
+     * Send one script call for all waiters and hand out the results in
+     * arrival order.
+     */
+    private void dispatch(String key, RateLimitPolicy policy, List<Waiter> waiters) {
+        boolean unitCost = waiters.stream().allMatch(waiter -> waiter.cost() == 1);
+        Mono<List<Long>> call = Mono.defer(() -> unitCost
+                ? script.execute(key, policy, waiters.size(), 1, 0)
+                : script.executeEach(key, policy, waiters.stream().map(Waiter::cost).toList()));
+
+        // However the call ends, the waiters are answered and the key released
+        call.switchIfEmpty(Mono.error(() -> new IllegalStateException("Token bucket script returned no result")))
+                .doOnNext(result -> answer(policy, waiters, unitCost, result))
+                .doFinally(signal -> dispatchWaiting(key))
+                .subscribe(result -> { }, error -> waiters.forEach(waiter -> waiter.sink().error(error)));
+    }
+
+    /**
+     * Hand each waiter its decision from the script result.
+     */
+    private static void answer(RateLimitPolicy policy, List<Waiter> waiters, boolean unitCost, List<Long> result) {
+        int expected = TokenBucketScript.RESULTS_PER_BUCKET * (unitCost ? 1 : waiters.size());
+        if (result.size() < expected) {
+            throw new IllegalStateException("Token bucket script returned " + result.size() + " values, expected "
+                    + expected);
+        }
+
+        if (unitCost) {
+            long granted = result.get(0);
+            for (int i = 0; i < waiters.size(); i++) {
+                // Earlier waiters saw the tokens later waiters went on to take
+                long taken = granted - 1 - i;
+                waiters.get(i).sink().success(i < granted
+                        ? RateLimitDecision.allowed(policy.capacity(), result.get(1) + taken,
+                                Math.max(0, result.get(3) - taken * 1000 / policy.refillRate()))
+                        : RateLimitDecision.denied(policy.capacity(), result.get(1), result.get(2),
+                                result.get(3)));
+            }
+        } else {
+            for (int i = 0; i < waiters.size(); i++) {
+                waiters.get(i).sink().success(
+                        RateLimitDecision.fromScript(result, TokenBucketScript.RESULTS_PER_BUCKET * i,
+                                policy.capacity()));
+            }
+        }
+    }
+
+    /**
+     * Send whatever queued up behind the finished call, or release the key.
+     */
+    private void dispatchWaiting(String key) {
+        InFlight[] drained = new InFlight[1];
+        inFlight.computeIfPresent(key, (k, current) -> {
+            if (current.waiting.isEmpty()) {
+                return null;
+            }
+            drained[0] = current;
+            return new InFlight(current.policy);
+        });
+
+        if (drained[0] != null) {
+            dispatch(key, drained[0].policy, drained[0].waiting);
+        }
+    }
+
+    private record Waiter(MonoSink<RateLimitDecision> sink, long cost) {
+    }
+
+    private static final class InFlight {
+        final List<Waiter> waiting = new ArrayList<>();
+        RateLimitPolicy policy;
+
+        InFlight(RateLimitPolicy policy) {
+            this.policy = policy;
+        }
+    }
+}
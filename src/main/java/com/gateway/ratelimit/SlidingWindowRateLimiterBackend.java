@@ -0,0 +1,70 @@
+package com.gateway.ratelimit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sliding window counter limits kept in Redis.
+ *
+ * A policy maps onto a window as long as it takes the equivalent token bucket
+ * to refill from empty ({@code capacity / refillRate} seconds), allowing
+ * {@code capacity} requests per window. The long-term rate and the burst size
+ * match the token bucket, but enforcement is smoother because the previous
+ * window's count decays linearly instead of tokens arriving in steps.
+ *
+ * Each decision is one script call that reads three hash fields and
+ * increments one, and each key holds constant state however busy it is.
+ * A request checked against several levels is counted against all their
+ * windows, or none, in the same script call.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rate-limit", name = "backend", havingValue = "sliding-window")
+public class SlidingWindowRateLimiterBackend implements RateLimiterBackend {
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+    private static final String WINDOW_PREFIX = "rate_limit:sw:";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> SCRIPT =
+            (RedisScript) RedisScript.of(new ClassPathResource("scripts/sliding_window.lua"), List.class);
+
+    @Override
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        return tryConsumeAll(List.of(new RateLimitLevel(key, policy)), cost);
+    }
+
+    @Override
+    public Mono<RateLimitDecision> tryConsumeAll(List<RateLimitLevel> levels, long cost) {
+        return execute(levels, cost).map(result -> RateLimitDecision.fromScript(result, 0, result.get(4)));
+    }
+
+    @Override
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return execute(List.of(new RateLimitLevel(key, policy)), 0).map(result -> result.get(1));
+    }
+
+    private Mono<List<Long>> execute(List<RateLimitLevel> levels, long cost) {
+        List<String> keys = new ArrayList<>(levels.size());
+        List<String> args = new ArrayList<>(levels.size() * 4);
+        for (RateLimitLevel level : levels) {
+            keys.add(WINDOW_PREFIX + level.key());
+            long windowMillis = 1000 * level.policy().capacity() / level.policy().refillRate();
+            args.add(String.valueOf(level.policy().capacity()));
+            args.add(String.valueOf(Math.max(1, windowMillis)));
+            args.add(String.valueOf(level.policy().ttl().toMillis()));
+            args.add(String.valueOf(cost));
+        }
+
+        return redisTemplate.execute(SCRIPT, keys, args).next();
+    }
+}
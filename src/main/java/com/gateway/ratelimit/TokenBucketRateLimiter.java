@@ -1,108 +1,208 @@
 package com.gateway.ratelimit;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
- * Token Bucket implementation for distributed rate limiting using Redis.
- * 
+ * Token Bucket implementation for distributed rate limiting.
+ *
  * The token bucket algorithm allows burst traffic while enforcing average rate
  * limits.
  * Each bucket has a capacity and refill rate. Requests consume tokens, and if
  * no tokens
  * are available, the request is rate limited.
+ *
+ * Bucket state is held by the configured {@link RateLimiterBackend}: Redis
+ * for buckets shared across gateway nodes, or gateway memory when a single
+ * node runs without Redis.
+ *
+ * Once a key is denied, the instant its next token can arrive is remembered
+ * locally and further requests are rejected without asking the backend until
+ * then, so clients that keep hammering after being limited cost nothing.
+ * Requests may cost several tokens; the remembered instant only covers
+ * requests costing at least as much as the one that was denied. A request
+ * costing more than a bucket's capacity could never be admitted, so it is
+ * denied at once as {@link RateLimitDecision#oversized}, without a backend
+ * call, a retry-after or shaping.
+ *
+ * A request can also be checked against several buckets at once (see
+ * {@link RateLimitLevel}); it is admitted only if all have tokens and is
+ * charged to all of them or to none.
+ *
+ * Policies with a {@code max-delay} hold limited requests and retry them
+ * through the {@link TrafficShaper} instead of rejecting them at once.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class TokenBucketRateLimiter {
 
-    private final ReactiveRedisTemplate<String, String> redisTemplate;
-
-    // Configuration
-    private static final long BUCKET_CAPACITY = 100; // Max tokens
-    private static final long REFILL_RATE = 10; // Tokens per second
-    private static final Duration TTL = Duration.ofMinutes(5);
+    private final RateLimiterBackend backend;
+    private final TrafficShaper shaper;
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofSeconds(10);
+
+    // Key -> System.nanoTime() before which the bucket cannot cover a cost,
+    // with what the denial reported for the response headers
+    private final ConcurrentHashMap<String, Exhausted> exhaustedUntil = new ConcurrentHashMap<>();
+    private final Counter negativeCacheHits;
+    private final Counter negativeCacheMisses;
+    private Disposable sweeper;
+
+    public TokenBucketRateLimiter(RateLimiterBackend backend, TrafficShaper shaper, MeterRegistry meterRegistry) {
+        this.backend = backend;
+        this.shaper = shaper;
+        this.negativeCacheHits = Counter.builder("gateway.ratelimit.negative.cache")
+                .description("Rate limit checks answered from the local exhausted-key cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.negativeCacheMisses = Counter.builder("gateway.ratelimit.negative.cache")
+                .description("Rate limit checks answered from the local exhausted-key cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
 
     /**
-     * Attempt to consume a token from the bucket.
-     * 
-     * @param key Unique identifier for the rate limit (e.g., user ID, IP address)
-     * @return true if request is allowed, false if rate limited
+     * Bucket key for a client on a route; each route limits clients separately.
      */
-    public Mono<Boolean> tryConsume(String key) {
-        String bucketKey = "rate_limit:bucket:" + key;
-        String timestampKey = "rate_limit:timestamp:" + key;
-
-        return getCurrentTokens(bucketKey, timestampKey)
-                .flatMap(tokens -> {
-                    if (tokens >= 1) {
-                        // Consume one token
-                        return redisTemplate.opsForValue()
-                                .decrement(bucketKey)
-                                .map(remaining -> {
-                                    log.debug("Request allowed for key: {} (tokens remaining: {})", key, remaining);
-                                    return true;
-                                });
-                    } else {
-                        log.warn("Rate limit exceeded for key: {}", key);
-                        return Mono.just(false);
-                    }
-                });
+    public static String bucketKey(String routeId, String clientKey) {
+        return routeId + ":" + clientKey;
     }
 
     /**
-     * Get current token count, refilling based on elapsed time.
+     * Attempt to consume {@code cost} tokens from the bucket, all or nothing.
+     *
+     * @param key    Unique identifier for the rate limit (e.g., user ID, IP address)
+     * @param policy Limits of the bucket
+     * @param cost   Tokens the request takes
+     * @return the decision, with the limit state for response headers
      */
-    private Mono<Long> getCurrentTokens(String bucketKey, String timestampKey) {
-        long now = Instant.now().toEpochMilli();
-
-        return redisTemplate.opsForValue().get(bucketKey)
-                .zipWith(redisTemplate.opsForValue().get(timestampKey))
-                .flatMap(tuple -> {
-                    long currentTokens = Long.parseLong(tuple.getT1());
-                    long lastRefill = Long.parseLong(tuple.getT2());
-
-                    // Calculate tokens to add based on elapsed time
-                    long elapsedMs = now - lastRefill;
-                    long tokensToAdd = (elapsedMs * REFILL_RATE) / 1000;
+    public Mono<RateLimitDecision> tryConsume(String key, RateLimitPolicy policy, long cost) {
+        if (cost > policy.capacity()) {
+            return Mono.just(RateLimitDecision.oversized(policy.capacity()));
+        }
+        return shaper.admit(key, policy, cost,
+                () -> check(key, cost, () -> backend.tryConsume(key, policy, cost)));
+    }
 
-                    if (tokensToAdd > 0) {
-                        long newTokens = Math.min(BUCKET_CAPACITY, currentTokens + tokensToAdd);
+    /**
+     * Attempt to consume {@code cost} tokens from the bucket of every level,
+     * all or nothing.
+     *
+     * @param levels Buckets to check, client bucket first
+     * @param cost   Tokens the request takes from each
+     * @return the decision, describing the level closest to running out
+     */
+    public Mono<RateLimitDecision> tryConsume(List<RateLimitLevel> levels, long cost) {
+        RateLimitLevel client = levels.get(0);
+        if (levels.size() == 1) {
+            return tryConsume(client.key(), client.policy(), cost);
+        }
+        for (RateLimitLevel level : levels) {
+            if (cost > level.policy().capacity()) {
+                return Mono.just(RateLimitDecision.oversized(level.policy().capacity()));
+            }
+        }
+        // A denial only predicts later ones for the same set of levels
+        StringBuilder key = new StringBuilder(client.key());
+        for (int i = 1; i < levels.size(); i++) {
+            key.append('|').append(levels.get(i).key());
+        }
+        String levelsKey = key.toString();
+        return shaper.admit(client.key(), client.policy(), cost,
+                () -> check(levelsKey, cost, () -> backend.tryConsumeAll(levels, cost)));
+    }
 
-                        return redisTemplate.opsForValue().set(bucketKey, String.valueOf(newTokens), TTL)
-                                .then(redisTemplate.opsForValue().set(timestampKey, String.valueOf(now), TTL))
-                                .thenReturn(newTokens);
+    /**
+     * One decision, answered from the negative cache when the key is known
+     * to be short.
+     */
+    private Mono<RateLimitDecision> check(String key, long cost, Supplier<Mono<RateLimitDecision>> backendCheck) {
+        Exhausted exhausted = exhausted(key, cost);
+        if (exhausted != null) {
+            negativeCacheHits.increment();
+            long now = System.nanoTime();
+            return Mono.just(RateLimitDecision.denied(exhausted.limit(), 0,
+                    ceilMillis(exhausted.until() - now), ceilMillis(exhausted.resetAt() - now)));
+        }
+        negativeCacheMisses.increment();
+
+        return backendCheck.get()
+                .doOnNext(decision -> {
+                    if (decision.allowed()) {
+                        log.debug("Request allowed for key: {} (tokens remaining: {})", key, decision.remaining());
+                        return;
+                    }
+                    log.warn("Rate limit exceeded for key: {}", key);
+                    if (decision.retryAfterMillis() > 0) {
+                        long now = System.nanoTime();
+                        exhaustedUntil.put(key, new Exhausted(
+                                now + TimeUnit.MILLISECONDS.toNanos(decision.retryAfterMillis()), cost,
+                                decision.limit(), now + TimeUnit.MILLISECONDS.toNanos(decision.resetMillis())));
                     }
+                });
+    }
 
-                    return Mono.just(currentTokens);
-                })
-                .switchIfEmpty(initializeBucket(bucketKey, timestampKey));
+    /**
+     * Get remaining tokens for a key (for monitoring/debugging).
+     */
+    public Mono<Long> getRemainingTokens(String key, RateLimitPolicy policy) {
+        return backend.getRemainingTokens(key, policy);
     }
 
     /**
-     * Initialize a new bucket with full capacity.
+     * The cached denial if the key cannot cover {@code cost} yet, else null.
      */
-    private Mono<Long> initializeBucket(String bucketKey, String timestampKey) {
-        long now = Instant.now().toEpochMilli();
+    private Exhausted exhausted(String key, long cost) {
+        Exhausted exhausted = exhaustedUntil.get(key);
+        if (exhausted == null) {
+            return null;
+        }
+        if (System.nanoTime() - exhausted.until() < 0) {
+            // A cheaper request may still fit in what the bucket holds
+            return cost >= exhausted.cost() ? exhausted : null;
+        }
+        exhaustedUntil.remove(key, exhausted);
+        return null;
+    }
 
-        return redisTemplate.opsForValue().set(bucketKey, String.valueOf(BUCKET_CAPACITY), TTL)
-                .then(redisTemplate.opsForValue().set(timestampKey, String.valueOf(now), TTL))
-                .thenReturn(BUCKET_CAPACITY);
+    private static long ceilMillis(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper = Schedulers.parallel().schedulePeriodically(
+                this::evictExpired, SWEEP_INTERVAL.toMillis(), SWEEP_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
     }
 
     /**
-     * Get remaining tokens for a key (for monitoring/debugging).
+     * Drop entries for keys that stopped sending requests while limited.
      */
-    public Mono<Long> getRemainingTokens(String key) {
-        String bucketKey = "rate_limit:bucket:" + key;
-        String timestampKey = "rate_limit:timestamp:" + key;
-        return getCurrentTokens(bucketKey, timestampKey);
+    private void evictExpired() {
+        long now = System.nanoTime();
+        exhaustedUntil.values().removeIf(exhausted -> now - exhausted.until() >= 0);
+    }
+
+    private record Exhausted(long until, long cost, long limit, long resetAt) {
     }
 }
@@ -0,0 +1,192 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the token bucket Lua script for the Redis-based backends.
+ *
+ * Refill and consume happen in one script on the Redis server, so every
+ * decision costs one round trip and concurrent gateway nodes cannot both spend
+ * the last token. The script is sent by SHA and only re-sent in full when
+ * Redis answers NOSCRIPT.
+ *
+ * Each bucket is stored as a single hash holding fixed-point tokens and the
+ * last refill time, taken from the Redis server clock rather than the
+ * gateway's so that clock skew between nodes does not distort refills.
+ *
+ * Several buckets can also be decided together, all or nothing, so a request
+ * checked against a client bucket, a route ceiling and a global ceiling costs
+ * one round trip and never leaves tokens taken from some of them.
+ *
+ * With {@code rate-limit.batching.enabled}, calls arriving within
+ * {@code window} of each other (or until {@code max-size} are waiting) are
+ * sent as one multi-bucket script call and the results handed back to each
+ * caller, trading that much added latency for far more decisions per Redis
+ * connection. A batch touches several keys in one script, so batching needs a
+ * non-clustered Redis.
+ */
+@Component
+public class TokenBucketScript {
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+
+    private static final String BUCKET_PREFIX = "rate_limit:tb:";
+
+    static final int RESULTS_PER_BUCKET = 4;
+
+    // How the script combines the buckets of one call
+    private static final String EACH = "each";
+    private static final String ALL = "all";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> SCRIPT =
+            (RedisScript) RedisScript.of(new ClassPathResource("scripts/token_bucket.lua"), List.class);
+
+    private final boolean batching;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    public TokenBucketScript(ReactiveRedisTemplate<String, String> redisTemplate, RateLimitProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.batching = properties.getBatching().isEnabled();
+        this.windowNanos = properties.getBatching().getWindow().toNanos();
+        this.maxBatchSize = properties.getBatching().getMaxSize();
+    }
+
+    /**
+     * Refill the bucket, add back {@code returned} tokens, then grant up to
+     * {@code requested} tokens provided at least {@code minimum} are available.
+     *
+     * @return {granted tokens, remaining tokens, millis until the minimum is
+     * available, millis until the bucket is full}
+     */
+    public Mono<List<Long>> execute(String key, RateLimitPolicy policy,
+                                    long requested, long minimum, long returned) {
+        Call call = new Call(key, policy, requested, minimum, returned);
+        if (!batching) {
+            return run(List.of(call));
+        }
+        return Mono.create(sink -> enqueue(new Pending(call, sink)));
+    }
+
+    /**
+     * Take each of {@code costs} from the same bucket in turn, all-or-nothing
+     * per cost, in one script call.
+     *
+     * @return {granted, remaining, retry after, reset} for each cost in order
+     */
+    public Mono<List<Long>> executeEach(String key, RateLimitPolicy policy, List<Long> costs) {
+        List<Call> calls = new ArrayList<>(costs.size());
+        for (long cost : costs) {
+            calls.add(new Call(key, policy, cost, cost, 0));
+        }
+        return run(calls);
+    }
+
+    /**
+     * Take {@code cost} tokens from every level's bucket if each has them,
+     * otherwise from none, in one script call. Never batched.
+     *
+     * @return {1 if taken else 0, fewest remaining tokens of any level,
+     * millis until every level could cover the cost, millis until that
+     * fewest-tokens level is full, its capacity}
+     */
+    public Mono<List<Long>> executeAll(List<RateLimitLevel> levels, long cost) {
+        List<Call> calls = new ArrayList<>(levels.size());
+        for (RateLimitLevel level : levels) {
+            calls.add(new Call(level.key(), level.policy(), cost, cost, 0));
+        }
+        return run(ALL, calls);
+    }
+
+    private Mono<List<Long>> run(List<Call> calls) {
+        return run(EACH, calls);
+    }
+
+    private Mono<List<Long>> run(String mode, List<Call> calls) {
+        List<String> keys = new ArrayList<>(calls.size());
+        List<String> args = new ArrayList<>(calls.size() * 6 + 1);
+        args.add(mode);
+        for (Call call : calls) {
+            keys.add(BUCKET_PREFIX + call.key());
+            args.add(String.valueOf(call.policy().capacity()));
+            args.add(String.valueOf(call.policy().refillRate()));
+            args.add(String.valueOf(call.policy().ttl().toMillis()));
+            args.add(String.valueOf(call.requested()));
+            args.add(String.valueOf(call.minimum()));
+            args.add(String.valueOf(call.returned()));
+        }
+
+        return redisTemplate.execute(SCRIPT, keys, args).next();
+    }
+
+    private void enqueue(Pending pending) {
+        queue.add(pending);
+        if (queued.incrementAndGet() >= maxBatchSize) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(this::flushWindow, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushWindow() {
+        flushScheduled.set(false);
+        while (!queue.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Send up to one batch of waiting calls and route each result back.
+     */
+    private void flush() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        Pending pending;
+        while (batch.size() < maxBatchSize && (pending = queue.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        queued.addAndGet(-batch.size());
+
+        run(batch.stream().map(Pending::call).toList())
+                .defaultIfEmpty(List.of())
+                .subscribe(results -> {
+                    if (results.size() < batch.size() * RESULTS_PER_BUCKET) {
+                        IllegalStateException error = new IllegalStateException(
+                                "Token bucket script returned " + results.size() + " values for "
+                                        + batch.size() + " buckets");
+                        batch.forEach(p -> p.sink().error(error));
+                        return;
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).sink().success(
+                                results.subList(i * RESULTS_PER_BUCKET, (i + 1) * RESULTS_PER_BUCKET));
+                    }
+                }, error -> batch.forEach(p -> p.sink().error(error)));
+    }
+
+    private record Call(String key, RateLimitPolicy policy, long requested, long minimum, long returned) {
+    }
+
+    private record Pending(Call call, MonoSink<List<Long>> sink) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.gateway.ratelimit;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds limited requests until their bucket can cover them instead of
+ * rejecting them, for policies with a {@code max-delay}.
+ *
+ * A waiting request is only a timeout on a hashed wheel timer, so no thread
+ * is blocked however many requests wait. Requests queued on the same bucket
+ * are spaced one cost's refill apart, so a burst is released at the refill
+ * rate rather than all retrying at once. Each bucket holds at most
+ * {@code max-queued} requests, and a request whose wait would run past
+ * {@code max-delay} is rejected straight away.
+ */
+@Component
+public class TrafficShaper {
+
+    // 10ms ticks; waits are at least a token's refill, usually far longer
+    private final HashedWheelTimer timer = new HashedWheelTimer(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-shaper");
+        thread.setDaemon(true);
+        return thread;
+    }, 10, TimeUnit.MILLISECONDS, 512);
+
+    // Bucket key -> requests currently waiting on it
+    private final ConcurrentHashMap<String, Integer> queued = new ConcurrentHashMap<>();
+
+    /**
+     * Run {@code attempt} until it allows the request or the policy's
+     * {@code max-delay} has passed.
+     *
+     * @param key     bucket the request waits on
+     * @param policy  limits of that bucket, including the shaping settings
+     * @param cost    tokens the request takes
+     * @param attempt one rate limit check
+     * @return the allowing decision, or the last denial if rejected
+     */
+    public Mono<RateLimitDecision> admit(String key, RateLimitPolicy policy, long cost,
+                                         Supplier<Mono<RateLimitDecision>> attempt) {
+        return attempt.get().flatMap(decision -> {
+            if (decision.allowed() || !decision.retryable() || !policy.shaping()) {
+                return Mono.just(decision);
+            }
+            long deadline = System.nanoTime() + policy.maxDelay().toNanos();
+            return wait(key, policy, cost, decision, deadline, attempt);
+        });
+    }
+
+    private Mono<RateLimitDecision> wait(String key, RateLimitPolicy policy, long cost, RateLimitDecision denial,
+                                         long deadline, Supplier<Mono<RateLimitDecision>> attempt) {
+        int position = queued.merge(key, 1, Integer::sum);
+        // Requests ahead of this one each take a cost's worth of refill first
+        long delay = TimeUnit.MILLISECONDS.toNanos(Math.max(1, denial.retryAfterMillis()))
+                + (position - 1) * cost * TimeUnit.SECONDS.toNanos(1) / policy.refillRate();
+        if (position > policy.maxQueued() || System.nanoTime() + delay - deadline > 0) {
+            release(key);
+            return Mono.just(denial);
+        }
+
+        return sleep(delay)
+                .doFinally(signal -> release(key))
+                .then(Mono.defer(attempt))
+                .flatMap(decision -> decision.allowed()
+                        ? Mono.just(decision)
+                        : wait(key, policy, cost, decision, deadline, attempt));
+    }
+
+    /**
+     * Complete after {@code nanos} on the timer, then continue off the timer
+     * thread. Cancelling drops the timeout.
+     */
+    private Mono<Void> sleep(long nanos) {
+        return Mono.<Void>create(sink -> {
+            Timeout timeout = timer.newTimeout(t -> sink.success(), nanos, TimeUnit.NANOSECONDS);
+            sink.onCancel(timeout::cancel);
+        }).publishOn(Schedulers.parallel());
+    }
+
+    private void release(String key) {
+        queued.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    @PreDestroy
+    void stop() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,75 @@
+-- Generic cell rate algorithm for one or more keys.
+--
+-- The only state is the theoretical arrival time (TAT) of the next request,
+-- in microseconds on the Redis server clock. The key expires when the TAT
+-- passes, which is exactly when the burst allowance is full again.
+--
+-- With several keys the request is counted against all of them or none;
+-- key i (from 0) uses KEYS[i+1] and ARGV[3i+1..3i+3].
+--
+-- KEYS[1]  TAT key
+-- ARGV[1]  burst size (requests allowed at once)
+-- ARGV[2]  rate (requests per second)
+-- ARGV[3]  requests to count (0 only reads the allowance)
+--
+-- Returns {allowed (1 or 0), fewest remaining requests of any key,
+--          millis until every key would allow the request (0 if allowed),
+--          millis until that fewest-remaining key has its full burst again,
+--          that key's burst size}
+
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local levels = {}
+local allowed = true
+local retryAfter = 0
+
+for i = 1, #KEYS do
+    local a = 3 * (i - 1)
+    local burst = tonumber(ARGV[a + 1])
+    local rate = tonumber(ARGV[a + 2])
+    local cost = tonumber(ARGV[a + 3])
+
+    local interval = 1000000 / rate
+    local tolerance = interval * burst
+
+    local tat = tonumber(redis.call('GET', KEYS[i])) or now
+    tat = math.max(tat, now)
+
+    local newTat = tat + interval * cost
+    local allowAt = newTat - tolerance
+
+    if now < allowAt then
+        allowed = false
+        retryAfter = math.max(retryAfter, math.ceil((allowAt - now) / 1000))
+    end
+    levels[i] = {tat = tat, newTat = newTat, interval = interval, tolerance = tolerance, cost = cost,
+                 burst = burst}
+end
+
+local remaining = nil
+local reset = 0
+local limit = 0
+for i, level in ipairs(levels) do
+    local tat = level.tat
+    if allowed then
+        tat = level.newTat
+        if level.cost > 0 then
+            redis.call('SET', KEYS[i], string.format('%.0f', tat),
+                'PX', math.max(1, math.ceil((tat - now) / 1000)))
+        end
+    end
+    local left = math.max(0, math.floor((level.tolerance - (tat - now)) / level.interval))
+    local full = math.ceil((tat - now) / 1000)
+    if remaining == nil or left < remaining or (left == remaining and full > reset) then
+        remaining = left
+        reset = full
+        limit = level.burst
+    end
+end
+
+return {allowed and 1 or 0, remaining or 0, retryAfter, reset, limit}
@@ -0,0 +1,17 @@
+-- Take or renew a circuit breaker probe lock.
+--
+-- The lock is free if the key is missing, and renewable by the node already
+-- holding it; either way the key is set to the node id with a fresh expiry.
+--
+-- KEYS[1]  lock key
+-- ARGV[1]  node id
+-- ARGV[2]  lock time to live, in milliseconds
+--
+-- Returns 1 if the node holds the lock, 0 if another node does
+
+local holder = redis.call('GET', KEYS[1])
+if holder and holder ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return 1
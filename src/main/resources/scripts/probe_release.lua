@@ -0,0 +1,12 @@
+-- Release a circuit breaker probe lock, but only if the node still holds it;
+-- once it has lapsed another node may have taken it.
+--
+-- KEYS[1]  lock key
+-- ARGV[1]  node id
+--
+-- Returns 1 if the lock was released, 0 otherwise
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,113 @@
+-- Sliding window counter for one or more keys.
+--
+-- The estimate over the last window is the current fixed window's count plus
+-- the previous window's count weighted by how much of it still overlaps.
+-- State is one hash with three fields, whatever the request rate:
+--   w  index of the current fixed window
+--   c  requests counted in the current window
+--   p  requests counted in the previous window
+--
+-- With several keys the request is counted against all of them or none;
+-- key i (from 0) uses KEYS[i+1] and ARGV[4i+1..4i+4].
+--
+-- KEYS[1]  window hash key
+-- ARGV[1]  requests allowed per window
+-- ARGV[2]  window length (millis)
+-- ARGV[3]  key TTL (millis)
+-- ARGV[4]  requests to count (0 only reads the estimate)
+--
+-- Returns {allowed (1 or 0), fewest remaining requests of any key,
+--          millis until every key would fit the request (0 if allowed),
+--          millis until that fewest-remaining key's count has decayed to
+--          zero, that key's limit}
+
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- Time until the weighted previous count has decayed enough
+local function wait(limit, windowMs, offset, current, previous, cost)
+    local retryAfter
+    if current + cost <= limit then
+        retryAfter = math.ceil(windowMs - offset - (limit - current - cost) * windowMs / previous)
+    elseif current > 0 then
+        -- Only fits once this window becomes the previous one
+        retryAfter = windowMs - offset + math.ceil(windowMs - (limit - cost) * windowMs / current)
+    else
+        retryAfter = windowMs - offset
+    end
+    return math.max(1, retryAfter)
+end
+
+local levels = {}
+local allowed = true
+local retryAfter = 0
+
+for i = 1, #KEYS do
+    local a = 4 * (i - 1)
+    local limit = tonumber(ARGV[a + 1])
+    local windowMs = tonumber(ARGV[a + 2])
+    local ttl = tonumber(ARGV[a + 3])
+    local cost = tonumber(ARGV[a + 4])
+
+    local window = math.floor(now / windowMs)
+    local offset = now - window * windowMs
+
+    local state = redis.call('HMGET', KEYS[i], 'w', 'c', 'p')
+    local stored = tonumber(state[1])
+    local current = tonumber(state[2]) or 0
+    local previous = tonumber(state[3]) or 0
+
+    -- Roll the fixed windows forward
+    if stored == nil or stored < window - 1 then
+        previous = 0
+        current = 0
+    elseif stored == window - 1 then
+        previous = current
+        current = 0
+    end
+
+    local estimate = previous * (windowMs - offset) / windowMs + current
+
+    if estimate + cost > limit then
+        allowed = false
+        retryAfter = math.max(retryAfter, wait(limit, windowMs, offset, current, previous, cost))
+    end
+    levels[i] = {limit = limit, windowMs = windowMs, ttl = ttl, cost = cost, window = window,
+                 offset = offset, current = current, previous = previous, estimate = estimate}
+end
+
+local remaining = nil
+local reset = 0
+local limit = 0
+for i, level in ipairs(levels) do
+    local left
+    local current = level.current
+    if allowed then
+        current = current + level.cost
+        redis.call('HSET', KEYS[i], 'w', level.window, 'c', current, 'p', level.previous)
+        redis.call('PEXPIRE', KEYS[i], math.max(level.ttl, 2 * level.windowMs))
+        left = math.floor(level.limit - level.estimate - level.cost)
+    else
+        left = math.max(0, math.floor(level.limit - level.estimate))
+    end
+
+    -- Counts leave the estimate once their window has slid past entirely
+    local full = 0
+    if current > 0 then
+        full = 2 * level.windowMs - level.offset
+    elseif level.previous > 0 then
+        full = level.windowMs - level.offset
+    end
+
+    if remaining == nil or left < remaining or (left == remaining and full > reset) then
+        remaining = left
+        reset = full
+        limit = level.limit
+    end
+end
+
+return {allowed and 1 or 0, remaining or 0, retryAfter, reset, limit}
@@ -0,0 +1,168 @@
+-- Atomic refill-and-consume for one or more token buckets.
+--
+-- Bucket state lives in one small hash (listpack-encoded by Redis):
+--   t  remaining tokens, fixed point in thousandths of a token
+--   r  last refill time, epoch millis
+--   c  capacity the tokens were counted against; when the policy changes the
+--      tokens are rescaled to the new capacity instead of being reset
+--
+-- Several buckets can be handled in one call; bucket i (from 0) uses
+-- KEYS[i+1] and ARGV[6i+2..6i+7]. ARGV[1] picks how they combine:
+--   each  every bucket is decided on its own and appends four values to the
+--         result. Buckets are processed in order, so repeating a key sees
+--         the previous entry's update.
+--   all   one decision for all buckets: the requested tokens are taken from
+--         every bucket if each has them, otherwise from none (the minimum is
+--         ignored). Returns {1 if taken else 0, fewest remaining whole tokens
+--         of any bucket, longest wait of any short bucket, millis until that
+--         fewest-tokens bucket is full, its capacity}.
+--
+-- ARGV[1]  each | all
+-- Per bucket:
+-- KEYS[1]  bucket hash key
+-- ARGV[2]  bucket capacity
+-- ARGV[3]  refill rate (tokens per second)
+-- ARGV[4]  key TTL (millis)
+-- ARGV[5]  tokens requested (0 only reads the refilled count)
+-- ARGV[6]  minimum tokens to grant; fewer available grants nothing
+-- ARGV[7]  unused tokens handed back before granting
+--
+-- Refill is measured against the Redis server clock, so gateway nodes with
+-- skewed clocks all see the same elapsed time.
+--
+-- Returns {granted tokens, remaining whole tokens,
+--          millis until the rest of the request could be granted
+--          (0 if fully granted), millis until the bucket is full, ...}
+
+local SCALE = 1000
+
+-- TIME is non-deterministic; replicate the writes rather than the script
+-- (always the case from Redis 7, needed explicitly on older servers)
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- Current tokens of a bucket, refilled up to now, and its last refill time
+local function load(key, capacity, rate, returned)
+    local state = redis.call('HMGET', key, 't', 'r', 'c')
+    local tokens = tonumber(state[1])
+    local lastRefill = tonumber(state[2])
+    local storedCapacity = tonumber(state[3])
+
+    if tokens == nil or lastRefill == nil then
+        -- New bucket starts with full capacity
+        tokens = capacity
+        lastRefill = now
+    end
+
+    if storedCapacity ~= nil and storedCapacity ~= capacity then
+        tokens = math.floor(tokens * capacity / storedCapacity)
+    end
+
+    -- Refill based on elapsed time; rate tokens/s equals rate thousandths per ms
+    local elapsed = now - lastRefill
+    if elapsed > 0 then
+        tokens = math.min(capacity, tokens + elapsed * rate)
+        lastRefill = now
+    end
+
+    return math.min(capacity, tokens + returned), lastRefill
+end
+
+local function store(key, tokens, lastRefill, capacity, ttl)
+    redis.call('HSET', key, 't', tokens, 'r', lastRefill, 'c', capacity)
+    redis.call('PEXPIRE', key, ttl)
+end
+
+-- Millis until the bucket holds the minimum, or at least one more token
+local function wait(tokens, rate, minimum)
+    return math.ceil((math.max(minimum, SCALE) - tokens) / rate)
+end
+
+-- Millis until the bucket is back at capacity
+local function untilFull(tokens, capacity, rate)
+    return math.max(0, math.ceil((capacity - tokens) / rate))
+end
+
+local function bucket(i)
+    local a = 6 * i + 1
+    return {
+        key = KEYS[i + 1],
+        capacity = tonumber(ARGV[a + 1]) * SCALE,
+        rate = tonumber(ARGV[a + 2]),
+        ttl = tonumber(ARGV[a + 3]),
+        requested = tonumber(ARGV[a + 4]) * SCALE,
+        minimum = tonumber(ARGV[a + 5]) * SCALE,
+        returned = tonumber(ARGV[a + 6]) * SCALE
+    }
+end
+
+local count = #KEYS
+
+if ARGV[1] == 'all' then
+    local buckets = {}
+    local admitted = true
+    for i = 0, count - 1 do
+        local b = bucket(i)
+        b.tokens, b.lastRefill = load(b.key, b.capacity, b.rate, b.returned)
+        if b.tokens < b.requested then
+            admitted = false
+        end
+        buckets[#buckets + 1] = b
+    end
+
+    local remaining = nil
+    local retryAfter = 0
+    local reset = 0
+    local limit = 0
+    for _, b in ipairs(buckets) do
+        if admitted then
+            b.tokens = b.tokens - b.requested
+        elseif b.tokens < b.requested then
+            retryAfter = math.max(retryAfter, wait(b.tokens, b.rate, b.requested))
+        end
+        store(b.key, b.tokens, b.lastRefill, b.capacity, b.ttl)
+
+        -- Report the bucket closest to running out
+        local whole = math.floor(b.tokens / SCALE)
+        local full = untilFull(b.tokens, b.capacity, b.rate)
+        if remaining == nil or whole < remaining or (whole == remaining and full > reset) then
+            remaining = whole
+            reset = full
+            limit = b.capacity / SCALE
+        end
+    end
+
+    return {admitted and 1 or 0, remaining or 0, retryAfter, reset, limit}
+end
+
+local result = {}
+for i = 0, count - 1 do
+    local b = bucket(i)
+    local tokens, lastRefill = load(b.key, b.capacity, b.rate, b.returned)
+
+    -- Grant whole tokens only, up to the request
+    local granted = 0
+    if tokens >= b.minimum then
+        granted = math.min(b.requested, math.floor(tokens / SCALE) * SCALE)
+        tokens = tokens - granted
+    end
+
+    -- When short, time until the minimum (or at least one more token) is back
+    local retryAfter = 0
+    if granted < b.requested then
+        retryAfter = wait(tokens, b.rate, b.minimum)
+    end
+
+    store(b.key, tokens, lastRefill, b.capacity, b.ttl)
+
+    result[#result + 1] = granted / SCALE
+    result[#result + 1] = math.floor(tokens / SCALE)
+    result[#result + 1] = retryAfter
+    result[#result + 1] = untilFull(tokens, b.capacity, b.rate)
+end
+
+return result
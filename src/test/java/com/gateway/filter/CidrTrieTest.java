@@ -0,0 +1,154 @@
+package com.gateway.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class CidrTrieTest {
+
+    @Test
+    void emptyTrieContainsNothing() {
+        CidrTrie trie = CidrTrie.of(List.of());
+
+        assertThat(trie.isEmpty()).isTrue();
+        assertThat(contains(trie, "10.0.0.1")).isFalse();
+        assertThat(contains(trie, "::")).isFalse();
+    }
+
+    @Test
+    void matchesIpv4Blocks() {
+        CidrTrie trie = CidrTrie.of(List.of("10.0.0.0/8", "192.168.1.0/24"));
+
+        assertThat(contains(trie, "10.0.0.0")).isTrue();
+        assertThat(contains(trie, "10.255.255.255")).isTrue();
+        assertThat(contains(trie, "11.0.0.0")).isFalse();
+        assertThat(contains(trie, "9.255.255.255")).isFalse();
+        assertThat(contains(trie, "192.168.1.200")).isTrue();
+        assertThat(contains(trie, "192.168.2.1")).isFalse();
+    }
+
+    @Test
+    void slash32IsOneAddress() {
+        CidrTrie trie = CidrTrie.of(List.of("203.0.113.7/32", "198.51.100.1"));
+
+        assertThat(contains(trie, "203.0.113.7")).isTrue();
+        assertThat(contains(trie, "203.0.113.6")).isFalse();
+        assertThat(contains(trie, "203.0.113.8")).isFalse();
+        assertThat(contains(trie, "198.51.100.1")).isTrue();
+        assertThat(contains(trie, "198.51.100.0")).isFalse();
+    }
+
+    @Test
+    void ipv4Slash0CoversOnlyIpv4() {
+        CidrTrie trie = CidrTrie.of(List.of("0.0.0.0/0"));
+
+        assertThat(contains(trie, "0.0.0.0")).isTrue();
+        assertThat(contains(trie, "255.255.255.255")).isTrue();
+        assertThat(contains(trie, "::ffff:10.0.0.1")).isTrue();
+        assertThat(contains(trie, "2001:db8::1")).isFalse();
+        assertThat(contains(trie, "::1")).isFalse();
+    }
+
+    @Test
+    void ipv6Slash0CoversEverything() {
+        CidrTrie trie = CidrTrie.of(List.of("::/0"));
+
+        assertThat(contains(trie, "::")).isTrue();
+        assertThat(contains(trie, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).isTrue();
+        assertThat(contains(trie, "10.0.0.1")).isTrue();
+    }
+
+    @Test
+    void matchesIpv6Blocks() {
+        CidrTrie trie = CidrTrie.of(List.of("2001:db8::/32", "fd00::/8", "2001:db9:1:2::/64"));
+
+        assertThat(contains(trie, "2001:db8::1")).isTrue();
+        assertThat(contains(trie, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff")).isTrue();
+        assertThat(contains(trie, "2001:db9::")).isFalse();
+        assertThat(contains(trie, "fdff::1")).isTrue();
+        assertThat(contains(trie, "fe00::1")).isFalse();
+        assertThat(contains(trie, "2001:db9:1:2:ffff::1")).isTrue();
+        assertThat(contains(trie, "2001:db9:1:3::")).isFalse();
+        assertThat(contains(trie, "10.0.0.1")).isFalse();
+    }
+
+    @Test
+    void slash128IsOneAddress() {
+        CidrTrie trie = CidrTrie.of(List.of("2001:db8::1/128", "::1"));
+
+        assertThat(contains(trie, "2001:db8::1")).isTrue();
+        assertThat(contains(trie, "2001:db8::")).isFalse();
+        assertThat(contains(trie, "2001:db8::2")).isFalse();
+        assertThat(contains(trie, "::1")).isTrue();
+        assertThat(contains(trie, "::")).isFalse();
+    }
+
+    @Test
+    void ipv4BlocksMatchMappedAddresses() {
+        CidrTrie v4 = CidrTrie.of(List.of("192.0.2.0/24"));
+        CidrTrie mapped = CidrTrie.of(List.of("::ffff:192.0.2.0/120"));
+
+        for (CidrTrie trie : List.of(v4, mapped)) {
+            assertThat(contains(trie, "192.0.2.1")).isTrue();
+            assertThat(contains(trie, "::ffff:192.0.2.1")).isTrue();
+            assertThat(contains(trie, "::ffff:c000:2ff")).isTrue();
+            assertThat(contains(trie, "192.0.3.1")).isFalse();
+            assertThat(contains(trie, "::192.0.2.1")).isFalse();
+        }
+    }
+
+    @Test
+    void nestedBlocksMatchTheLongestAndShortestPrefix() {
+        for (List<String> blocks : List.of(
+                List.of("10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.1.2.3/32"),
+                List.of("10.1.2.3/32", "10.1.2.0/24", "10.1.0.0/16", "10.0.0.0/8"))) {
+            CidrTrie trie = CidrTrie.of(blocks);
+
+            assertThat(contains(trie, "10.1.2.3")).as("%s", blocks).isTrue();
+            assertThat(contains(trie, "10.1.2.4")).as("%s", blocks).isTrue();
+            assertThat(contains(trie, "10.1.3.0")).as("%s", blocks).isTrue();
+            assertThat(contains(trie, "10.2.0.0")).as("%s", blocks).isTrue();
+            assertThat(contains(trie, "11.1.2.3")).as("%s", blocks).isFalse();
+        }
+    }
+
+    @Test
+    void siblingBlocksUnderACommonPrefix() {
+        CidrTrie trie = CidrTrie.of(List.of("10.1.2.0/24", "10.1.3.0/24", "10.1.2.128/25"));
+
+        assertThat(contains(trie, "10.1.2.1")).isTrue();
+        assertThat(contains(trie, "10.1.2.200")).isTrue();
+        assertThat(contains(trie, "10.1.3.1")).isTrue();
+        assertThat(contains(trie, "10.1.1.255")).isFalse();
+        assertThat(contains(trie, "10.1.4.0")).isFalse();
+    }
+
+    @Test
+    void mixesIpv4AndIpv6() {
+        CidrTrie trie = CidrTrie.of(List.of("10.0.0.0/8", "2001:db8::/32"));
+
+        assertThat(contains(trie, "10.0.0.1")).isTrue();
+        assertThat(contains(trie, "2001:db8::1")).isTrue();
+        assertThat(contains(trie, "11.0.0.1")).isFalse();
+        assertThat(contains(trie, "2001:db7::1")).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidBlocks() {
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("10.0.0.0/33")));
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("10.0.0.0/-1")));
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("2001:db8::/129")));
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("10.0.0.0/x")));
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("10.0.0/8")));
+        assertThatIllegalArgumentException().isThrownBy(() -> CidrTrie.of(List.of("localhost")));
+    }
+
+    private static boolean contains(CidrTrie trie, String address) {
+        long[] parsed = new long[2];
+        assertThat(IpAddress.parse(address, 0, address.length(), parsed)).as(address).isTrue();
+        return trie.contains(parsed[0], parsed[1]);
+    }
+}
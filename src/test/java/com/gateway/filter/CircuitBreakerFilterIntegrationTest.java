@@ -0,0 +1,150 @@
+package com.gateway.filter;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the gateway against a stub upstream that fails, answers slowly or
+ * streams its body slowly, and checks what each route's breaker and timeout
+ * make of it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "rate-limit.backend=memory",
+        "logging.level.com.gateway=INFO"
+})
+class CircuitBreakerFilterIntegrationTest {
+
+    private static final Duration SLOW = Duration.ofMillis(400);
+    private static final AtomicInteger FAILING_CALLS = new AtomicInteger();
+
+    private static final DisposableServer UPSTREAM = HttpServer.create()
+            .port(0)
+            .route(routes -> routes
+                    .get("/failing", (request, response) -> {
+                        FAILING_CALLS.incrementAndGet();
+                        return response.status(503).sendString(Mono.just("down"));
+                    })
+                    // Status and headers go out with the first, late, chunk
+                    .get("/slow", (request, response) -> response.sendString(
+                            Mono.just("late").delayElement(SLOW)))
+                    // Status and headers go out at once, the body trickles after
+                    .get("/streaming", (request, response) -> response.sendString(
+                            Flux.concat(Mono.just("first"), Flux.just("second", "third").delayElements(SLOW)))))
+            .bindNow();
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakers;
+
+    @DynamicPropertySource
+    static void routes(DynamicPropertyRegistry registry) {
+        List<String> routeIds = List.of("failing", "slow", "streaming");
+        for (int i = 0; i < routeIds.size(); i++) {
+            String routeId = routeIds.get(i);
+            String route = "spring.cloud.gateway.routes[" + i + "]";
+            registry.add(route + ".id", () -> routeId);
+            registry.add(route + ".uri", () -> "http://localhost:" + UPSTREAM.port());
+            registry.add(route + ".predicates[0]", () -> "Path=/" + routeId);
+
+            String breaker = "resilience4j.circuitbreaker.instances." + routeId;
+            registry.add(breaker + ".sliding-window-size", () -> 2);
+            registry.add(breaker + ".minimum-number-of-calls", () -> 2);
+            registry.add(breaker + ".failure-rate-threshold", () -> 50);
+            registry.add(breaker + ".slow-call-rate-threshold", () -> 50);
+            registry.add(breaker + ".slow-call-duration-threshold", () -> "200ms");
+            registry.add(breaker + ".wait-duration-in-open-state", () -> "1m");
+        }
+
+        // The same upstream paths behind /timed, with a timeout shorter than SLOW
+        int timed = routeIds.size();
+        String route = "spring.cloud.gateway.routes[" + timed + "]";
+        registry.add(route + ".id", () -> "timed");
+        registry.add(route + ".uri", () -> "http://localhost:" + UPSTREAM.port());
+        registry.add(route + ".predicates[0]", () -> "Path=/timed/**");
+        registry.add(route + ".filters[0]", () -> "StripPrefix=1");
+        registry.add("resilience4j.timelimiter.instances.timed.timeout-duration", () -> "200ms");
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.disposeNow();
+    }
+
+    @Test
+    void upstream5xxOpensTheCircuit() {
+        for (int i = 0; i < 2; i++) {
+            client.get().uri("/failing").exchange()
+                    .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                    .expectHeader().doesNotExist("X-Circuit-Breaker")
+                    .expectBody(String.class).isEqualTo("down");
+        }
+
+        client.get().uri("/failing").exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals("X-Circuit-Breaker", "OPEN");
+        assertThat(FAILING_CALLS).hasValue(2);
+        assertThat(circuitBreakers.circuitBreaker("failing").getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void slowUpstreamResponsesOpenTheCircuit() {
+        for (int i = 0; i < 2; i++) {
+            client.get().uri("/slow").exchange()
+                    .expectStatus().isOk()
+                    .expectBody(String.class).isEqualTo("late");
+        }
+
+        CircuitBreaker breaker = circuitBreakers.circuitBreaker("slow");
+        assertThat(breaker.getMetrics().getNumberOfSlowSuccessfulCalls()).isEqualTo(2);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        client.get().uri("/slow").exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals("X-Circuit-Breaker", "OPEN");
+    }
+
+    @Test
+    void slowBodyAfterPromptHeadersIsNotASlowCall() {
+        for (int i = 0; i < 3; i++) {
+            client.get().uri("/streaming").exchange()
+                    .expectStatus().isOk()
+                    .expectBody(String.class).isEqualTo("firstsecondthird");
+        }
+
+        CircuitBreaker breaker = circuitBreakers.circuitBreaker("streaming");
+        assertThat(breaker.getMetrics().getNumberOfSlowCalls()).isZero();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void timesOutUpstreamThatDoesNotRespond() {
+        client.get().uri("/timed/slow").exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    void doesNotCutOffResponseThatIsAlreadyStreaming() {
+        client.get().uri("/timed/streaming").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("firstsecondthird");
+    }
+}
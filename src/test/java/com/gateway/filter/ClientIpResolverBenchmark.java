@@ -0,0 +1,71 @@
+package com.gateway.filter;
+
+import com.gateway.config.RateLimitProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of turning a proxied request into its bucket key, before and
+ * after the client address was parsed in place. Run it with the GC profiler
+ * and compare {@code gc.alloc.rate.norm}, the bytes allocated per operation:
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Djmh.args="ClientIpResolverBenchmark -prof gc"}.
+ *
+ * {@code splitHeader} is the old path: split the header on commas, trim the
+ * first entry and concatenate the bucket and timestamp keys. {@code resolver}
+ * finds the client with {@link ClientIpResolver} and adds the one key prefix
+ * the token bucket script still concatenates.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ClientIpResolverBenchmark {
+
+    @Param({"198.51.100.7", "198.51.100.7, 10.1.1.1", "2001:db8::7"})
+    public String forwardedFor;
+
+    private ServerHttpRequest request;
+    private ClientIpResolver resolver;
+
+    @Setup
+    public void setUp() {
+        request = MockServerHttpRequest.get("/")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 443))
+                .header("X-Forwarded-For", forwardedFor)
+                .build();
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setTrustedProxies(List.of("10.0.0.0/8"));
+        resolver = new ClientIpResolver(properties);
+    }
+
+    @Benchmark
+    public void splitHeader(Blackhole blackhole) {
+        String clientIp = request.getHeaders().getFirst("X-Forwarded-For").split(",")[0].trim();
+        blackhole.consume("rate_limit:bucket:" + clientIp);
+        blackhole.consume("rate_limit:timestamp:" + clientIp);
+    }
+
+    @Benchmark
+    public String resolver() {
+        return "rate_limit:tb:" + resolver.resolve(request);
+    }
+}
@@ -0,0 +1,135 @@
+package com.gateway.filter;
+
+import com.gateway.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientIpResolverTest {
+
+    private static final List<String> PROXIES = List.of("10.0.0.0/8", "2001:db8::/32");
+
+    @Test
+    void usesRemoteAddressWithoutTrustedProxies() {
+        ClientIpResolver resolver = resolver(List.of());
+
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7"))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void ignoresHeaderFromUntrustedPeer() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("203.0.113.9", "198.51.100.7"))).isEqualTo("203.0.113.9");
+    }
+
+    @Test
+    void usesRemoteAddressWhenTrustedProxySendsNoHeader() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1"))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void takesHopBeforeTrustedProxy() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7"))).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void walksRightToLeftPastTrustedProxies() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7, 10.1.1.1,10.2.2.2")))
+                .isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void stopsAtFirstUntrustedHopSoSpoofedEntriesAreNeverReached() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        // The client wrote 1.2.3.4 itself; the proxy appended its real address
+        assertThat(resolver.resolve(request("10.0.0.1", "1.2.3.4, 198.51.100.7, 10.1.1.1")))
+                .isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void walksHeaderLinesFromTheLast() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "1.2.3.4, 198.51.100.7", "10.1.1.1", "10.2.2.2")))
+                .isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void fallsBackToNearestTrustedHopOnGarbage() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7, unknown, 10.1.1.1")))
+                .isEqualTo("10.1.1.1");
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7, , 10.1.1.1")))
+                .isEqualTo("10.1.1.1");
+        assertThat(resolver.resolve(request("10.0.0.1", "garbage"))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void takesFarthestHopWhenAllAreTrusted() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "10.3.3.3, 10.1.1.1"))).isEqualTo("10.3.3.3");
+    }
+
+    @Test
+    void handlesIpv6AndCanonicalisesTheClient() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("2001:db8::1", "2001:DB8:0:0:0:0:0:2, 2001:db8::3")))
+                .isEqualTo("2001:db8::2");
+        assertThat(resolver.resolve(request("2001:db8::1", "2001:0db9::0001, 2001:db8::3")))
+                .isEqualTo("2001:db9::1");
+        assertThat(resolver.resolve(request("10.0.0.1", "::ffff:198.51.100.7"))).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void trustsIpv4ProxiesWrittenAsMappedAddresses() {
+        ClientIpResolver resolver = resolver(PROXIES);
+
+        assertThat(resolver.resolve(request("10.0.0.1", "198.51.100.7, ::ffff:10.1.1.1")))
+                .isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void keepsResolvedAddressOnTheExchange() {
+        ClientIpResolver resolver = resolver(PROXIES);
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/").remoteAddress(address("10.0.0.1"))
+                        .header("X-Forwarded-For", "198.51.100.7"));
+
+        assertThat(resolver.resolve(exchange)).isEqualTo("198.51.100.7");
+        assertThat(resolver.resolve(exchange)).isSameAs(resolver.resolve(exchange));
+    }
+
+    private static ClientIpResolver resolver(List<String> trustedProxies) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setTrustedProxies(trustedProxies);
+        return new ClientIpResolver(properties);
+    }
+
+    private static MockServerHttpRequest request(String remote, String... forwardedFor) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/").remoteAddress(address(remote));
+        if (forwardedFor.length > 0) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        return request.build();
+    }
+
+    private static InetSocketAddress address(String ip) {
+        return new InetSocketAddress(ip, 443);
+    }
+}
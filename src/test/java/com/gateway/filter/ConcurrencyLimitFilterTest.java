@@ -0,0 +1,78 @@
+package com.gateway.filter;
+
+import com.gateway.config.ConcurrencyLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitFilterTest {
+
+    private static final Route ROUTE = Route.async()
+            .id("upstream")
+            .uri("http://localhost:8081")
+            .predicate(exchange -> true)
+            .build();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(properties(), meterRegistry);
+
+    // Responds at once, as an upstream with spare capacity
+    private final GatewayFilterChain responding = exchange -> {
+        exchange.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR, new Object());
+        return exchange.getResponse().setComplete();
+    };
+
+    // Never responds, so the circuit breaker filter gives up and answers 504
+    private final GatewayFilterChain timingOut = exchange -> Mono.delay(Duration.ofMillis(20)).then(Mono.defer(() -> {
+        exchange.getAttributes().put(CircuitBreakerFilter.UPSTREAM_TIMEOUT_ATTR, true);
+        exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+        return exchange.getResponse().setComplete();
+    }));
+
+    @Test
+    void upstreamThatTimesOutShrinksTheLimit() {
+        long baselineUntil = System.nanoTime() + Duration.ofMillis(20).toNanos();
+        while (System.nanoTime() < baselineUntil) {
+            call(responding);
+        }
+        double baseline = limit();
+
+        for (int i = 0; i < 5; i++) {
+            call(timingOut);
+        }
+
+        assertThat(limit()).isLessThan(baseline);
+        assertThat(meterRegistry.get("gateway.concurrency.in.flight").gauge().value()).isZero();
+    }
+
+    private void call(GatewayFilterChain chain) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        filter.filter(exchange, chain).block(Duration.ofSeconds(1));
+    }
+
+    private double limit() {
+        return meterRegistry.get("gateway.concurrency.limit").gauge().value();
+    }
+
+    private static ConcurrencyLimitProperties properties() {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setEnabled(true);
+        properties.setMinLimit(1);
+        properties.setWindow(Duration.ofMillis(1));
+        properties.setMinWindowSamples(1);
+        properties.setSmoothing(0.5);
+        return properties;
+    }
+}
@@ -0,0 +1,52 @@
+package com.gateway.filter;
+
+import com.gateway.config.IpAccessProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAccessListTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void missingFileKeepsItsLastEntries() throws IOException {
+        Path denyFile = directory.resolve("deny.txt");
+        Files.writeString(denyFile, "203.0.113.0/24\n");
+        IpAccessList list = list(denyFile);
+        assertThat(list.check("203.0.113.9")).isEqualTo(IpAccessList.Access.DENIED);
+
+        Files.delete(denyFile);
+        list.reloadIfChanged();
+
+        assertThat(list.check("203.0.113.9")).isEqualTo(IpAccessList.Access.DENIED);
+    }
+
+    @Test
+    void emptiedFileClearsItsEntries() throws IOException {
+        Path denyFile = directory.resolve("deny.txt");
+        Files.writeString(denyFile, "203.0.113.0/24\n");
+        IpAccessList list = list(denyFile);
+
+        Files.writeString(denyFile, "# nobody is denied\n");
+        // Make sure the poll sees a new modification time
+        Files.setLastModifiedTime(denyFile,
+                FileTime.from(Files.getLastModifiedTime(denyFile).toInstant().plusSeconds(1)));
+        list.reloadIfChanged();
+
+        assertThat(list.check("203.0.113.9")).isEqualTo(IpAccessList.Access.UNLISTED);
+    }
+
+    private static IpAccessList list(Path denyFile) throws IOException {
+        IpAccessProperties properties = new IpAccessProperties();
+        properties.setDenyFile(denyFile.toString());
+        return new IpAccessList(properties);
+    }
+}
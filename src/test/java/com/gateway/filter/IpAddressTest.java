@@ -0,0 +1,117 @@
+package com.gateway.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressTest {
+
+    @Test
+    void keepsCanonicalIpv4AsIs() {
+        String address = "203.0.113.7";
+
+        assertThat(IpAddress.canonical(address, 0, address.length())).isSameAs(address);
+    }
+
+    @Test
+    void canonicalisesIpv4() {
+        assertThat(canonical(" 10.0.0.1\t")).isEqualTo("10.0.0.1");
+        assertThat(canonical("010.000.000.001")).isEqualTo("10.0.0.1");
+        assertThat(canonical("0.0.0.0")).isEqualTo("0.0.0.0");
+        assertThat(canonical("255.255.255.255")).isEqualTo("255.255.255.255");
+    }
+
+    @Test
+    void readsAddressBetweenIndexes() {
+        String header = "198.51.100.1, 10.0.0.2";
+
+        assertThat(IpAddress.canonical(header, 13, header.length())).isEqualTo("10.0.0.2");
+        assertThat(IpAddress.canonical(header, 0, 12)).isEqualTo("198.51.100.1");
+    }
+
+    @Test
+    void rejectsInvalidIpv4() {
+        assertThat(canonical("")).isNull();
+        assertThat(canonical("   ")).isNull();
+        assertThat(canonical("10.0.0")).isNull();
+        assertThat(canonical("10.0.0.1.2")).isNull();
+        assertThat(canonical("10.0.0.256")).isNull();
+        assertThat(canonical("10..0.1")).isNull();
+        assertThat(canonical("10.0.0.")).isNull();
+        assertThat(canonical("1000.0.0.1")).isNull();
+        assertThat(canonical("unknown")).isNull();
+    }
+
+    @Test
+    void canonicalisesIpv6ToRfc5952() {
+        assertThat(canonical("2001:0DB8:0000:0000:0000:0000:0000:0001")).isEqualTo("2001:db8::1");
+        assertThat(canonical("2001:db8:0:0:1:0:0:1")).isEqualTo("2001:db8::1:0:0:1");
+        assertThat(canonical("2001:db8:0:1:1:1:1:1")).isEqualTo("2001:db8:0:1:1:1:1:1");
+        assertThat(canonical("::")).isEqualTo("::");
+        assertThat(canonical("::1")).isEqualTo("::1");
+        assertThat(canonical("fe80::")).isEqualTo("fe80::");
+        assertThat(canonical("1:2:3:4:5:6:7:8")).isEqualTo("1:2:3:4:5:6:7:8");
+    }
+
+    @Test
+    void rejectsInvalidIpv6() {
+        assertThat(canonical(":")).isNull();
+        assertThat(canonical(":1::")).isNull();
+        assertThat(canonical("1::2::3")).isNull();
+        assertThat(canonical("1:2:3:4:5:6:7")).isNull();
+        assertThat(canonical("1:2:3:4:5:6:7:8:9")).isNull();
+        assertThat(canonical("1:2:3:4::5:6:7:8")).isNull();
+        assertThat(canonical("12345::")).isNull();
+        assertThat(canonical("1:")).isNull();
+        assertThat(canonical("g::1")).isNull();
+    }
+
+    @Test
+    void writesIpv4MappedIpv6AsIpv4() {
+        assertThat(canonical("::ffff:192.0.2.1")).isEqualTo("192.0.2.1");
+        assertThat(canonical("::FFFF:c000:0201")).isEqualTo("192.0.2.1");
+        assertThat(canonical("0:0:0:0:0:ffff:192.0.2.1")).isEqualTo("192.0.2.1");
+    }
+
+    @Test
+    void parsesIpv4AsMapped() {
+        long[] v4 = parse("192.0.2.1");
+        long[] mapped = parse("::ffff:192.0.2.1");
+
+        assertThat(v4).containsExactly(0L, 0xffffc0000201L);
+        assertThat(mapped).containsExactly(v4[0], v4[1]);
+        assertThat(IpAddress.isV4(v4[0], v4[1])).isTrue();
+        assertThat(IpAddress.isV4(parse("::1")[0], parse("::1")[1])).isFalse();
+    }
+
+    @Test
+    void parsesIpv6IntoTwoHalves() {
+        assertThat(parse("2001:db8::1")).containsExactly(0x20010db800000000L, 1L);
+        assertThat(parse("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")).containsExactly(-1L, -1L);
+        assertThat(parse("::")).containsExactly(0L, 0L);
+    }
+
+    @Test
+    void matchesSocketAddresses() throws Exception {
+        assertThat(IpAddress.canonical(InetAddress.getByName("192.0.2.1"))).isEqualTo("192.0.2.1");
+        assertThat(IpAddress.canonical(InetAddress.getByName("2001:db8:0:0:0:0:0:1"))).isEqualTo("2001:db8::1");
+
+        long[] parsed = new long[2];
+        IpAddress.parse(InetAddress.getByName("2001:db8::1"), parsed);
+        assertThat(parsed).containsExactly(parse("2001:db8::1")[0], parse("2001:db8::1")[1]);
+        IpAddress.parse(InetAddress.getByName("192.0.2.1"), parsed);
+        assertThat(parsed).containsExactly(parse("192.0.2.1")[0], parse("192.0.2.1")[1]);
+    }
+
+    private static String canonical(String text) {
+        return IpAddress.canonical(text, 0, text.length());
+    }
+
+    private static long[] parse(String text) {
+        long[] address = new long[2];
+        assertThat(IpAddress.parse(text, 0, text.length(), address)).as(text).isTrue();
+        return address;
+    }
+}
@@ -0,0 +1,138 @@
+package com.gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class JwtVerifierTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final String HS256 = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
+    private static final String RS256 = "{\"alg\":\"RS256\",\"typ\":\"JWT\"}";
+
+    private final long now = System.currentTimeMillis() / 1000;
+
+    @Test
+    void acceptsSignedToken() throws Exception {
+        JwtVerifier verifier = verifier(SECRET, null, null);
+
+        JwtVerifier.Claims claims = verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"exp\":" + (now + 60) + "}"));
+
+        assertThat(claims.subject()).isEqualTo("alice");
+        assertThat(claims.expiresAt()).isEqualTo(now + 60 + 30);
+    }
+
+    @Test
+    void tokenWithoutExpiryNeverExpires() throws Exception {
+        JwtVerifier verifier = verifier(SECRET, null, null);
+
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\"}")).expiresAt()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void refusesForgedSubject() throws Exception {
+        JwtVerifier verifier = verifier(SECRET, null, null);
+        String token = hs256(SECRET, "{\"sub\":\"alice\"}");
+        int payloadEnd = token.lastIndexOf('.');
+        String forged = token.substring(0, token.indexOf('.') + 1) + base64("{\"sub\":\"admin\"}")
+                + token.substring(payloadEnd);
+
+        assertThat(verifier.verify(forged)).isNull();
+        assertThat(verifier.verify(hs256("another-secret-of-at-least-32-bytes", "{\"sub\":\"alice\"}"))).isNull();
+    }
+
+    @Test
+    void refusesUnsignedAndMalformedTokens() {
+        JwtVerifier verifier = verifier(SECRET, null, null);
+
+        assertThat(verifier.verify(base64("{\"alg\":\"none\"}") + "." + base64("{\"sub\":\"alice\"}") + ".")).isNull();
+        assertThat(verifier.verify("not-a-token")).isNull();
+        assertThat(verifier.verify("a.b")).isNull();
+        assertThat(verifier.verify("a.b.c.d")).isNull();
+        assertThat(verifier.verify("!!.??.**")).isNull();
+    }
+
+    @Test
+    void refusesExpiredAndNotYetValidTokens() throws Exception {
+        JwtVerifier verifier = verifier(SECRET, null, null);
+
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"exp\":" + (now - 120) + "}"))).isNull();
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"nbf\":" + (now + 120) + "}"))).isNull();
+        // Within the clock skew
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"exp\":" + (now - 10) + "}"))).isNotNull();
+    }
+
+    @Test
+    void refusesOtherIssuersAndMissingSubject() throws Exception {
+        JwtVerifier verifier = verifier(SECRET, null, "https://auth.example.com");
+
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"iss\":\"https://auth.example.com\"}")))
+                .isNotNull();
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\",\"iss\":\"https://evil.example.com\"}")))
+                .isNull();
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"alice\"}"))).isNull();
+        assertThat(verifier.verify(hs256(SECRET, "{\"iss\":\"https://auth.example.com\"}"))).isNull();
+    }
+
+    @Test
+    void verifiesRs256WithPublicKey() throws Exception {
+        KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        String pem = "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder().encodeToString(keys.getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----";
+        JwtVerifier verifier = verifier(null, pem, null);
+
+        String signed = base64(RS256) + "." + base64("{\"sub\":\"bob\"}");
+        Signature rsa = Signature.getInstance("SHA256withRSA");
+        rsa.initSign(keys.getPrivate());
+        rsa.update(signed.getBytes(StandardCharsets.US_ASCII));
+        String token = signed + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(rsa.sign());
+
+        assertThat(verifier.verify(token).subject()).isEqualTo("bob");
+        // No secret configured, so HS256 tokens are refused
+        assertThat(verifier.verify(hs256(SECRET, "{\"sub\":\"bob\"}"))).isNull();
+    }
+
+    @Test
+    void isConfiguredOnlyWithAKey() {
+        assertThat(verifier(null, null, null).isConfigured()).isFalse();
+        assertThat(verifier(SECRET, null, null).isConfigured()).isTrue();
+    }
+
+    @Test
+    void refusesShortSecretsAndBadKeys() {
+        assertThatIllegalArgumentException().isThrownBy(() -> verifier("short", null, null));
+        assertThatIllegalArgumentException().isThrownBy(() -> verifier(null, "not a key", null));
+    }
+
+    private static JwtVerifier verifier(String secret, String publicKey, String issuer) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getJwt().setSecret(secret);
+        properties.getJwt().setPublicKey(publicKey);
+        properties.getJwt().setIssuer(issuer);
+        return new JwtVerifier(properties, new ObjectMapper());
+    }
+
+    private static String hs256(String secret, String claims) throws Exception {
+        String signed = base64(HS256) + "." + base64(claims);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] signature = mac.doFinal(signed.getBytes(StandardCharsets.US_ASCII));
+        return signed + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
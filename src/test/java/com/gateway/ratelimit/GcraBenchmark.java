@@ -0,0 +1,105 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.config.RedisConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GCRA against the token bucket with the same policy, in memory and in
+ * Redis: {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=GcraBenchmark}.
+ *
+ * The in-memory pairs report decisions per microsecond; run them with
+ * {@code -t max} as well to compare contention on one key. The Redis pairs
+ * report p50/p99 latency in sample time mode, and need Docker. Every policy
+ * refills faster than the benchmark spends, so both algorithms take their
+ * admitting path.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GcraBenchmark {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    @State(Scope.Benchmark)
+    public static class InMemory {
+
+        static final RateLimitPolicy POLICY = new RateLimitPolicy(65_535, 1_000_000_000, TTL, Duration.ZERO, 0);
+
+        final InMemoryRateLimiterBackend tokenBucket = new InMemoryRateLimiterBackend();
+        final InMemoryGcraRateLimiterBackend gcra = new InMemoryGcraRateLimiterBackend();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Redis {
+
+        static final RateLimitPolicy POLICY = new RateLimitPolicy(1_000_000, 1_000_000, TTL, Duration.ZERO, 0);
+
+        GenericContainer<?> container;
+        LettuceConnectionFactory connectionFactory;
+        RedisRateLimiterBackend tokenBucket;
+        GcraRateLimiterBackend gcra;
+
+        @Setup(Level.Trial)
+        public void connect() {
+            container = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+            container.start();
+            connectionFactory = new LettuceConnectionFactory(container.getHost(), container.getMappedPort(6379));
+            connectionFactory.afterPropertiesSet();
+            ReactiveRedisTemplate<String, String> redisTemplate =
+                    new RedisConfig().reactiveRedisTemplate(connectionFactory);
+            tokenBucket = new RedisRateLimiterBackend(new TokenBucketScript(redisTemplate, new RateLimitProperties()));
+            gcra = new GcraRateLimiterBackend(redisTemplate);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() {
+            connectionFactory.destroy();
+            container.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public Mono<RateLimitDecision> inMemoryTokenBucket(InMemory state) {
+        return state.tokenBucket.tryConsume("bench", InMemory.POLICY, 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public Mono<RateLimitDecision> inMemoryGcra(InMemory state) {
+        return state.gcra.tryConsume("bench", InMemory.POLICY, 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public RateLimitDecision redisTokenBucket(Redis state) {
+        return state.tokenBucket.tryConsume("bench", Redis.POLICY, 1).block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public RateLimitDecision redisGcra(Redis state) {
+        return state.gcra.tryConsume("bench", Redis.POLICY, 1).block();
+    }
+}
@@ -0,0 +1,41 @@
+package com.gateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryGcraRateLimiterBackendTest {
+
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(10, 1, Duration.ofMinutes(1), Duration.ZERO, 0);
+
+    private final InMemoryGcraRateLimiterBackend backend = new InMemoryGcraRateLimiterBackend();
+
+    @Test
+    void costAboveCapacityIsDeniedForGood() {
+        for (long cost : new long[]{11, Long.MAX_VALUE}) {
+            RateLimitDecision decision = backend.tryConsume("client", POLICY, cost).block();
+
+            assertThat(decision.allowed()).isFalse();
+            assertThat(decision.retryable()).isFalse();
+        }
+        assertThat(backend.tryConsume("client", POLICY, 10).block().allowed()).isTrue();
+    }
+
+    @Test
+    void deniedLevelsReportTheLongestWait() {
+        // Drained, the fast level has a token again in 100ms and the slow one in a second
+        List<RateLimitLevel> levels = List.of(
+                new RateLimitLevel("fast", new RateLimitPolicy(10, 10, Duration.ofMinutes(1), Duration.ZERO, 0)),
+                new RateLimitLevel("slow", new RateLimitPolicy(10, 1, Duration.ofMinutes(1), Duration.ZERO, 0)));
+        assertThat(backend.tryConsumeAll(levels, 10).block().allowed()).isTrue();
+
+        RateLimitDecision denied = backend.tryConsumeAll(levels, 1).block();
+
+        assertThat(denied.allowed()).isFalse();
+        assertThat(denied.retryAfterMillis()).isBetween(900L, 1_010L);
+    }
+}
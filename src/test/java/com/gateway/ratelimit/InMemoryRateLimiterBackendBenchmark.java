@@ -0,0 +1,65 @@
+package com.gateway.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decisions per microsecond of the in-memory token bucket backend, for comparing
+ * thread counts: {@code mvn -Pbenchmark test-compile exec:exec
+ * -Djmh.args="InMemoryRateLimiterBackendBenchmark -t 1"}, then {@code -t 4},
+ * {@code -t max} and so on.
+ *
+ * {@code keyPerThread} is many clients, each thread deciding for its own
+ * bucket; it should scale with cores. {@code sharedKey} is one client on
+ * every thread, so all threads compare-and-set the same bucket and show what
+ * contention costs. The bucket refills within a millisecond, so nearly
+ * every decision takes the admitting compare-and-set path.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class InMemoryRateLimiterBackendBenchmark {
+
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(65_535, 1_000_000_000, Duration.ofMinutes(5), Duration.ZERO, 0);
+
+    private final InMemoryRateLimiterBackend backend = new InMemoryRateLimiterBackend();
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        String key;
+
+        @Setup
+        public void setUp(InMemoryRateLimiterBackendBenchmark benchmark) {
+            key = "client-" + benchmark.threads.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    public Mono<RateLimitDecision> keyPerThread(Client client) {
+        return backend.tryConsume(client.key, POLICY, 1);
+    }
+
+    @Benchmark
+    public Mono<RateLimitDecision> sharedKey() {
+        return backend.tryConsume("shared", POLICY, 1);
+    }
+}
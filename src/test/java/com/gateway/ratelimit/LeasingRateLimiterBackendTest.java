@@ -0,0 +1,73 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers(disabledWithoutDocker = true)
+class LeasingRateLimiterBackendTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static final long CAPACITY = 100;
+    // Slow enough that nothing refills during a test
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(CAPACITY, 1, Duration.ofMinutes(1), Duration.ZERO, 0);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static LeasingRateLimiterBackend backend;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        RateLimitProperties properties = new RateLimitProperties();
+        backend = new LeasingRateLimiterBackend(
+                new TokenBucketScript(new RedisConfig().reactiveRedisTemplate(connectionFactory), properties),
+                properties);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void admitsConcurrentFirstRequestsWhileTheBucketHasTokens() {
+        List<RateLimitDecision> decisions = decide("first-burst", (int) CAPACITY);
+
+        assertThat(decisions).hasSize((int) CAPACITY).allMatch(RateLimitDecision::allowed);
+    }
+
+    @Test
+    void deniesWhatTheBucketCannotCoverWithARetryAfter() {
+        List<RateLimitDecision> decisions = decide("over-burst", (int) CAPACITY + 20);
+
+        assertThat(decisions).filteredOn(RateLimitDecision::allowed).hasSize((int) CAPACITY);
+        assertThat(decisions).filteredOn(decision -> !decision.allowed())
+                .hasSize(20)
+                .allMatch(decision -> decision.retryAfterMillis() > 0);
+    }
+
+    private static List<RateLimitDecision> decide(String key, int requests) {
+        return Flux.range(0, requests)
+                .flatMap(i -> backend.tryConsume(key, POLICY, 1), requests)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+    }
+}
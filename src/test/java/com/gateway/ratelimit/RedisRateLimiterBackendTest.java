@@ -0,0 +1,71 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisRateLimiterBackendTest {
+
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(10, 1, Duration.ofMinutes(1), Duration.ZERO, 0);
+
+    @Test
+    void malformedResultFailsTheCallAndReleasesTheKey() {
+        ScriptStub script = new ScriptStub(Mono.just(List.of(1L)));
+        RedisRateLimiterBackend backend = new RedisRateLimiterBackend(script);
+
+        StepVerifier.create(backend.tryConsume("client", POLICY, 1))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(1));
+
+        script.result = Mono.just(List.of(1L, 9L, 0L, 1000L));
+        StepVerifier.create(backend.tryConsume("client", POLICY, 1))
+                .expectNextMatches(RateLimitDecision::allowed)
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+        assertThat(script.calls).hasValue(2);
+    }
+
+    @Test
+    void emptyResultFailsTheCallAndReleasesTheKey() {
+        ScriptStub script = new ScriptStub(Mono.empty());
+        RedisRateLimiterBackend backend = new RedisRateLimiterBackend(script);
+
+        StepVerifier.create(backend.tryConsume("client", POLICY, 1))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(1));
+
+        script.result = Mono.error(new IllegalStateException("Redis down"));
+        StepVerifier.create(backend.tryConsume("client", POLICY, 1))
+                .expectErrorMessage("Redis down")
+                .verify(Duration.ofSeconds(1));
+    }
+
+    /**
+     * Script that answers every call with a fixed result instead of running.
+     */
+    private static final class ScriptStub extends TokenBucketScript {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile Mono<List<Long>> result;
+
+        ScriptStub(Mono<List<Long>> result) {
+            super(null, new RateLimitProperties());
+            this.result = result;
+        }
+
+        @Override
+        public Mono<List<Long>> execute(String key, RateLimitPolicy policy,
+                                        long requested, long minimum, long returned) {
+            calls.incrementAndGet();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Harness for clock skew between gateway nodes: several simulated nodes with
+ * skewed clocks take turns spending from one bucket, and the requests they
+ * get admitted are compared with what the policy allows over the elapsed time.
+ *
+ * The script refills against the Redis server clock, so it should match the
+ * policy however skewed the nodes are. The same request sequence is replayed
+ * against a model of the old approach, where each node refilled against its
+ * own clock, to show the error the script removes.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class TokenBucketClockSkewTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static final long CAPACITY = 10;
+    private static final long REFILL_RATE = 20;
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(CAPACITY, REFILL_RATE, Duration.ofMinutes(1), Duration.ZERO, 0);
+
+    // Clock offset of each simulated node
+    private static final long[] NODE_SKEW_MILLIS = {-1500, 0, 1500};
+    private static final Duration RUN_TIME = Duration.ofSeconds(2);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static TokenBucketScript script;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        script = new TokenBucketScript(new RedisConfig().reactiveRedisTemplate(connectionFactory),
+                new RateLimitProperties());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void admitsWhatThePolicyAllowsWhateverTheNodeClocks() {
+        NodeClockModel model = new NodeClockModel();
+        long scriptAdmitted = 0;
+
+        long start = System.nanoTime();
+        long end = start + RUN_TIME.toNanos();
+        long now = start;
+        for (int request = 0; now < end; request++) {
+            long skew = NODE_SKEW_MILLIS[request % NODE_SKEW_MILLIS.length];
+
+            List<Long> result = script.execute("skew-test", POLICY, 1, 1, 0).block();
+            scriptAdmitted += result.get(0);
+
+            now = System.nanoTime();
+            model.tryConsume(TimeUnit.NANOSECONDS.toMillis(now - start) + skew);
+        }
+
+        double elapsedSeconds = (now - start) / 1e9;
+        double allowed = CAPACITY + REFILL_RATE * elapsedSeconds;
+        double scriptError = scriptAdmitted - allowed;
+        double modelError = model.admitted - allowed;
+        String summary = String.format("Allowed %.1f over %.2fs: Redis clock admitted %d (error %+.1f), "
+                        + "node clocks admitted %d (error %+.1f)",
+                allowed, elapsedSeconds, scriptAdmitted, scriptError, model.admitted, modelError);
+
+        // A token of rounding either way, plus refill during the last round trip
+        assertThat((double) scriptAdmitted).as(summary).isCloseTo(allowed, within(2 + REFILL_RATE * 0.05));
+        assertThat(Math.abs(modelError)).as(summary).isGreaterThan(Math.abs(scriptError));
+    }
+
+    /**
+     * One bucket refilled against whichever node's clock last wrote it, as
+     * when every node used its own wall clock.
+     */
+    private static final class NodeClockModel {
+        double tokens = CAPACITY;
+        long lastRefill = Long.MIN_VALUE;
+        long admitted;
+
+        void tryConsume(long nodeMillis) {
+            if (lastRefill != Long.MIN_VALUE) {
+                long elapsed = nodeMillis - lastRefill;
+                // A node behind the last writer sees time run backwards
+                tokens = Math.min(CAPACITY, tokens + Math.max(0, elapsed) * REFILL_RATE / 1000.0);
+            }
+            lastRefill = nodeMillis;
+            if (tokens >= 1) {
+                tokens -= 1;
+                admitted++;
+            }
+        }
+    }
+}
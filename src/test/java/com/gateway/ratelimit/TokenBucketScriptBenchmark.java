@@ -0,0 +1,113 @@
+package com.gateway.ratelimit;
+
+import com.gateway.config.RateLimitProperties;
+import com.gateway.config.RedisConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one limiter decision against Redis: the token bucket script,
+ * one round trip, against the GET, GET, SET, SET, DECR sequence the limiter
+ * used before it. Sample time mode reports p50 and p99 (and the other
+ * percentiles) for each: {@code mvn -Pbenchmark test-compile exec:exec
+ * -Djmh.args=TokenBucketScriptBenchmark}.
+ *
+ * Redis runs in a local container, so round trips are far cheaper than
+ * across a network and the gap between the two is a lower bound. Both sides
+ * use a policy that refills faster than they spend, so every decision
+ * admits and the old sequence takes its full path. Needs Docker.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TokenBucketScriptBenchmark {
+
+    private static final long CAPACITY = 1_000_000;
+    private static final long REFILL_RATE = 1_000_000;
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(CAPACITY, REFILL_RATE, TTL, Duration.ZERO, 0);
+
+    private GenericContainer<?> redis;
+    private LettuceConnectionFactory connectionFactory;
+    private ReactiveRedisTemplate<String, String> redisTemplate;
+    private TokenBucketScript script;
+
+    @Setup(Level.Trial)
+    public void connect() {
+        redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+        redis.start();
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisConfig().reactiveRedisTemplate(connectionFactory);
+        script = new TokenBucketScript(redisTemplate, new RateLimitProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() {
+        connectionFactory.destroy();
+        redis.stop();
+    }
+
+    @Benchmark
+    public List<Long> script() {
+        return script.execute("bench", POLICY, 1, 1, 0).block();
+    }
+
+    @Benchmark
+    public Boolean separateCommands() {
+        String bucketKey = "rate_limit:bucket:bench";
+        String timestampKey = "rate_limit:timestamp:bench";
+        return currentTokens(bucketKey, timestampKey)
+                .flatMap(tokens -> tokens >= 1
+                        ? redisTemplate.opsForValue().decrement(bucketKey).thenReturn(true)
+                        : Mono.just(false))
+                .block();
+    }
+
+    /**
+     * The refill of the old limiter, with this benchmark's policy.
+     */
+    private Mono<Long> currentTokens(String bucketKey, String timestampKey) {
+        long now = Instant.now().toEpochMilli();
+        return redisTemplate.opsForValue().get(bucketKey)
+                .zipWith(redisTemplate.opsForValue().get(timestampKey))
+                .flatMap(tuple -> {
+                    long tokens = Long.parseLong(tuple.getT1());
+                    long tokensToAdd = (now - Long.parseLong(tuple.getT2())) * REFILL_RATE / 1000;
+                    if (tokensToAdd <= 0) {
+                        return Mono.just(tokens);
+                    }
+                    long refilled = Math.min(CAPACITY, tokens + tokensToAdd);
+                    return redisTemplate.opsForValue().set(bucketKey, String.valueOf(refilled), TTL)
+                            .then(redisTemplate.opsForValue().set(timestampKey, String.valueOf(now), TTL))
+                            .thenReturn(refilled);
+                })
+                .switchIfEmpty(Mono.defer(() -> redisTemplate.opsForValue()
+                        .set(bucketKey, String.valueOf(CAPACITY), TTL)
+                        .then(redisTemplate.opsForValue().set(timestampKey, String.valueOf(now), TTL))
+                        .thenReturn(CAPACITY)));
+    }
+}